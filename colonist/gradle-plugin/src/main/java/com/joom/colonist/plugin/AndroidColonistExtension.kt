@@ -21,4 +21,5 @@ import java.io.File
 open class AndroidColonistExtension {
   var cacheable: Boolean = false
   var bootClasspath: List<File> = emptyList()
+  var maxLoadedClassCount: Int? = null
 }
@@ -21,6 +21,7 @@ import com.android.build.api.variant.Component
 import com.android.build.api.variant.HasAndroidTest
 import com.android.build.api.variant.Variant
 import com.android.build.gradle.AppExtension
+import com.joom.colonist.processor.index.PrecomputedClassIndexProvider
 import org.gradle.api.GradleException
 import org.gradle.api.Project
 import org.gradle.api.artifacts.Configuration
@@ -64,9 +65,12 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
 
   private fun configureTransformWithArtifactsApi(registrar: TransformTaskRegistrar) {
     val extension = project.extensions.create("colonist", AndroidVariantColonistExtension::class.java)
+    ClassIndexTransform.register(project)
 
     project.applicationAndroidComponents?.apply {
       onVariants(selector().all()) { variant ->
+        // Class indices of libraries are only read at build time, so they are kept out of the APK.
+        variant.packaging.resources.excludes.add(CLASS_INDEX_EXCLUDE_PATTERN)
         variant.registerColonistTask(registrar, discoverSettlers = true, processTest = extension.processTest)
       }
     }
@@ -90,6 +94,7 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
       discoverSettlers = discoverSettlers,
       classpathProvider = classpathProvider(runtimeClasspath),
       discoveryClasspathProvider = discoveryClasspathProvider(runtimeClasspath),
+      discoveryClassIndicesProvider = discoveryClassIndicesProvider(runtimeClasspath),
     )
 
     androidTest?.let { androidTest ->
@@ -99,7 +104,8 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
         registrar = registrar,
         discoverSettlers = discoverSettlers,
         classpathProvider = classpathProvider(androidTestRuntimeClasspath),
-        discoveryClasspathProvider = discoveryClasspathProvider(androidTestRuntimeClasspath) - discoveryClasspathProvider(runtimeClasspath)
+        discoveryClasspathProvider = discoveryClasspathProvider(androidTestRuntimeClasspath) - discoveryClasspathProvider(runtimeClasspath),
+        discoveryClassIndicesProvider = discoveryClassIndicesProvider(androidTestRuntimeClasspath) - discoveryClassIndicesProvider(runtimeClasspath),
       )
     }
 
@@ -110,7 +116,8 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
         registrar = registrar,
         discoverSettlers = discoverSettlers,
         classpathProvider = classpathProvider(runtimeClasspath),
-        discoveryClasspathProvider = discoveryClasspathProvider(unitTestRuntimeClasspath)
+        discoveryClasspathProvider = discoveryClasspathProvider(unitTestRuntimeClasspath),
+        discoveryClassIndicesProvider = discoveryClassIndicesProvider(unitTestRuntimeClasspath),
       )
     }
   }
@@ -127,6 +134,10 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
     return configuration.map { it.incomingJarArtifacts { it is ProjectComponentIdentifier }.artifactFiles }
   }
 
+  private fun discoveryClassIndicesProvider(configuration: Provider<Configuration>): Provider<FileCollection> {
+    return configuration.map { it.incomingClassIndexArtifacts { it is ProjectComponentIdentifier }.artifactFiles }
+  }
+
   private operator fun Provider<FileCollection>.minus(other: Provider<FileCollection>): Provider<FileCollection> {
     return zip(other) { first, second -> first - second }
   }
@@ -137,6 +148,7 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
     discoverSettlers: Boolean,
     classpathProvider: Provider<FileCollection>,
     discoveryClasspathProvider: Provider<FileCollection>,
+    discoveryClassIndicesProvider: Provider<FileCollection>,
   ) {
     val taskProvider = project.registerTask<ColonistTransformClassesTask>("colonistTransformClasses${name.replaceFirstChar { it.uppercaseChar() }}")
     registrar.register(this, taskProvider)
@@ -144,8 +156,15 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
     taskProvider.configure { task ->
       task.discoverSettlers = discoverSettlers
       task.discoveryClasspath.setFrom(discoveryClasspathProvider)
+      task.discoveryClassIndices.setFrom(discoveryClassIndicesProvider)
       task.classpath.setFrom(classpathProvider)
       task.bootClasspath.setFrom(project.android.bootClasspath)
+      task.cacheDirectory.set(getClassIndexCacheDirectory())
+      task.stateFile.set(project.layout.buildDirectory.file("intermediates/colonist/$name/state.txt"))
+      task.reportFile.set(project.layout.buildDirectory.file("intermediates/colonist/$name/report.json"))
+      task.maxLoadedClassCount.set(project.extensions.getByType(AndroidVariantColonistExtension::class.java).maxLoadedClassCount)
+      task.cacheService.set(getCacheService())
+      task.usesService(getCacheService())
     }
   }
 
@@ -158,7 +177,7 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
     val extension = project.extensions.create("colonist", AndroidColonistExtension::class.java)
 
     @Suppress("DEPRECATION")
-    project.android.registerTransform(ColonistTransform(extension))
+    project.android.registerTransform(ColonistTransform(extension, getClassIndexCacheDirectory().get().asFile))
 
     project.afterEvaluate {
       extension.bootClasspath = project.android.bootClasspath
@@ -168,5 +187,7 @@ class AndroidColonistPlugin : BaseColonistPlugin() {
   private companion object {
     private val SCOPED_ARTIFACTS_VERSION = AndroidPluginVersion(major = 7, minor = 4, micro = 0)
     private val ALL_CLASSES_TRANSFORM_API_VERSION = AndroidPluginVersion(major = 7, minor = 1, micro = 0)
+
+    private const val CLASS_INDEX_EXCLUDE_PATTERN = "/${PrecomputedClassIndexProvider.CLASS_INDEX_DIRECTORY}/**"
   }
 }
@@ -2,4 +2,5 @@ package com.joom.colonist.plugin
 
 open class AndroidVariantColonistExtension {
   var processTest: Boolean = false
+  var maxLoadedClassCount: Int? = null
 }
@@ -16,20 +16,36 @@
 
 package com.joom.colonist.plugin
 
+import com.joom.colonist.processor.ColonistResult
+import com.joom.colonist.processor.ColonistResultSerializer
+import com.joom.colonist.processor.commons.computeContentHash
 import com.joom.colonist.processor.watermark.WatermarkChecker
 import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.ConcurrentHashMap
 import org.gradle.api.DefaultTask
 import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.OutputDirectories
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
 import org.gradle.api.tasks.TaskAction
+import org.gradle.work.DisableCachingByDefault
 
+@DisableCachingByDefault(because = "Copying files is cheaper than loading them from cache")
 open class BackupClassesTask : DefaultTask() {
   @InputFiles
+  @PathSensitive(PathSensitivity.RELATIVE)
   var classesDirs: List<File> = emptyList()
 
   @OutputDirectories
   var backupDirs: List<File> = emptyList()
 
+  @Internal
+  var manifestFile: File? = null
+
   @TaskAction
   fun backupClasses() {
     validate()
@@ -37,47 +53,65 @@ open class BackupClassesTask : DefaultTask() {
     logger.info("  from {}", classesDirs)
     logger.info("    to {}", backupDirs)
 
+    val manifest = manifestFile?.let { ColonistResultSerializer.read(it.toPath()) }
     forEach(classesDirs, backupDirs) { classesDir, backupDir ->
       if (!classesDir.exists()) {
         logger.info("Classes directory doesn't exists. Nothing to backup.")
         backupDir.deleteRecursively()
       } else {
-        val visitedFiles = copyUpdatedFiles(classesDir, backupDir)
+        val visitedFiles = copyUpdatedFiles(classesDir, backupDir, manifest)
         removeUnvisitedFiles(backupDir, visitedFiles)
       }
     }
   }
 
-  private fun copyUpdatedFiles(classesDir: File, backupDir: File): Set<String> {
+  private fun copyUpdatedFiles(classesDir: File, backupDir: File, manifest: ColonistResult?): Set<String> {
     logger.info("Copying updated files...")
     logger.info("  from [{}]", classesDir)
     logger.info("    to [{}]", backupDir)
 
-    val visitedPaths = mutableSetOf<String>()
-    classesDir.walk().forEach { file ->
-      if (!file.isDirectory) {
-        logger.debug("Checking {}...", file)
-        val relativePath = file.toRelativeString(classesDir)
-        visitedPaths.add(relativePath)
-        if (WatermarkChecker.isColonistClass(file)) {
-          logger.debug("Watermark found - skipping")
+    val visitedPaths = ConcurrentHashMap.newKeySet<String>()
+    classesDir.walk().filter { it.isFile }.toList().parallelStream().forEach { file ->
+      logger.debug("Checking {}...", file)
+      val relativePath = file.toRelativeString(classesDir)
+      visitedPaths.add(relativePath)
+      if (isColonistFile(file, relativePath, manifest)) {
+        logger.debug("File was produced by colonist - skipping")
+      } else {
+        val backupFile = backupDir.resolve(relativePath)
+        if (!backupFile.exists()) {
+          logger.debug("Backup file doesn't exist - copying")
+          file.linkOrCopyTo(backupFile)
+        } else if (!hasSameContent(file, backupFile)) {
+          logger.debug("File was updated - copying")
+          file.linkOrCopyTo(backupFile)
         } else {
-          val backupFile = backupDir.resolve(relativePath)
-          if (!backupFile.exists()) {
-            logger.debug("Backup file doesn't exist - copying")
-            file.copyToWithLastModified(backupFile)
-          } else if (file.lastModified() != backupFile.lastModified()) {
-            logger.debug("File was updated - copying")
-            file.copyToWithLastModified(backupFile, true)
-          } else {
-            logger.debug("File wasn't updated - skipping")
-          }
+          logger.debug("File wasn't updated - skipping")
         }
       }
     }
     return visitedPaths
   }
 
+  private fun hasSameContent(file: File, backupFile: File): Boolean {
+    val path = file.toPath()
+    val backupPath = backupFile.toPath()
+    if (Files.isSameFile(path, backupPath)) {
+      return true
+    }
+
+    return file.length() == backupFile.length() && path.computeContentHash() == backupPath.computeContentHash()
+  }
+
+  private fun isColonistFile(file: File, relativePath: String, manifest: ColonistResult?): Boolean {
+    if (manifest == null) {
+      return WatermarkChecker.isColonistClass(file)
+    }
+
+    val hash = manifest.fileHashes[relativePath.replace(File.separatorChar, '/')] ?: return false
+    return file.toPath().computeContentHash() == hash
+  }
+
   private fun removeUnvisitedFiles(backupDir: File, visitedPaths: Set<String>) {
     logger.info("Removing abandoned files...")
     logger.info("  from [{}]", backupDir)
@@ -126,6 +160,21 @@ open class BackupClassesTask : DefaultTask() {
     require(classesDirs.size == backupDirs.size) { "classesDirs and backupDirs must have equal size" }
   }
 
+  // Processor outputs replace patched class files instead of overwriting them and leave the rest linked, so a hard link can serve as a backup.
+  private fun File.linkOrCopyTo(target: File) {
+    val source = toPath()
+    val destination = target.toPath()
+    Files.createDirectories(destination.parent)
+    Files.deleteIfExists(destination)
+    try {
+      Files.createLink(destination, source)
+    } catch (exception: UnsupportedOperationException) {
+      Files.copy(source, destination, StandardCopyOption.COPY_ATTRIBUTES)
+    } catch (exception: IOException) {
+      Files.copy(source, destination, StandardCopyOption.COPY_ATTRIBUTES)
+    }
+  }
+
   private fun File.copyToWithLastModified(target: File, overwrite: Boolean = false) {
     copyTo(target, overwrite)
     target.setLastModified(lastModified())
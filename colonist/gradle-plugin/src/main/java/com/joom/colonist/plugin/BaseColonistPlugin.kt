@@ -18,7 +18,9 @@ package com.joom.colonist.plugin
 
 import org.gradle.api.Plugin
 import org.gradle.api.Project
+import org.gradle.api.file.Directory
 import org.gradle.api.logging.Logger
+import org.gradle.api.provider.Provider
 
 abstract class BaseColonistPlugin : Plugin<Project> {
   lateinit var project: Project
@@ -33,4 +35,16 @@ abstract class BaseColonistPlugin : Plugin<Project> {
     val version = Build.VERSION
     project.dependencies.add(configurationName, "com.joom.colonist:colonist-core:$version")
   }
+
+  protected fun getClassIndexCacheDirectory(): Provider<Directory> {
+    return project.rootProject.layout.buildDirectory.dir(CLASS_INDEX_CACHE_PATH)
+  }
+
+  protected fun getCacheService(): Provider<ColonistCacheService> {
+    return ColonistCacheService.register(project)
+  }
+
+  private companion object {
+    private const val CLASS_INDEX_CACHE_PATH = "colonist/class-index"
+  }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.plugin
+
+import com.android.build.gradle.internal.publishing.AndroidArtifacts
+import com.joom.colonist.processor.index.ClassIndexSerializer
+import com.joom.colonist.processor.index.PrecomputedClassIndexProvider
+import com.joom.colonist.processor.index.ScanningClassIndexProvider
+import org.gradle.api.Project
+import org.gradle.api.artifacts.transform.CacheableTransform
+import org.gradle.api.artifacts.transform.InputArtifact
+import org.gradle.api.artifacts.transform.TransformAction
+import org.gradle.api.artifacts.transform.TransformOutputs
+import org.gradle.api.artifacts.transform.TransformParameters
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition
+import org.gradle.api.file.FileSystemLocation
+import org.gradle.api.provider.Provider
+import org.gradle.api.tasks.Classpath
+
+@CacheableTransform
+abstract class ClassIndexTransform : TransformAction<TransformParameters.None> {
+  @get:InputArtifact
+  @get:Classpath
+  abstract val inputArtifact: Provider<FileSystemLocation>
+
+  override fun transform(outputs: TransformOutputs) {
+    val input = inputArtifact.get().asFile
+    val output = outputs.file(input.nameWithoutExtension + INDEX_EXTENSION)
+    val classIndex = PrecomputedClassIndexProvider(ScanningClassIndexProvider).getClassIndex(input.toPath())
+    ClassIndexSerializer.write(classIndex, output.toPath())
+  }
+
+  companion object {
+    const val ARTIFACT_TYPE = "colonist-class-index"
+
+    private const val INDEX_EXTENSION = ".idx"
+
+    fun register(project: Project) {
+      project.dependencies.registerTransform(ClassIndexTransform::class.java) { spec ->
+        @Suppress("UnstableApiUsage")
+        spec.from.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, AndroidArtifacts.ArtifactType.CLASSES_JAR.type)
+        @Suppress("UnstableApiUsage")
+        spec.to.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, ARTIFACT_TYPE)
+      }
+    }
+  }
+}
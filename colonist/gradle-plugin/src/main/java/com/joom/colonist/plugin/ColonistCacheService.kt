@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.plugin
+
+import com.joom.colonist.processor.commons.ArchiveHasher
+import com.joom.colonist.processor.commons.ClassMirrorCache
+import org.gradle.api.Project
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+// Cached mirrors keep the registries that loaded them open, so the cache lives only as long as the service, i.e. one build,
+// and closes them when the build finishes.
+abstract class ColonistCacheService : BuildService<ColonistCacheService.Parameters>, AutoCloseable {
+  interface Parameters : BuildServiceParameters {
+    val maxCachedClassCount: Property<Int>
+  }
+
+  private val classMirrorCacheValue = lazy {
+    parameters.maxCachedClassCount.get().takeIf { it > 0 }?.let { ClassMirrorCache(it) }
+  }
+
+  val classMirrorCache: ClassMirrorCache?
+    get() = classMirrorCacheValue.value
+
+  val archiveHasher: ArchiveHasher
+    get() = ARCHIVE_HASHER
+
+  override fun close() {
+    if (classMirrorCacheValue.isInitialized()) {
+      classMirrorCacheValue.value?.close()
+    }
+  }
+
+  companion object {
+    private const val NAME = "colonistCache"
+    private const val MAX_CACHED_CLASS_COUNT_PROPERTY = "colonist.maxCachedClassCount"
+    private const val DEFAULT_MAX_CACHED_CLASS_COUNT = 20_000
+
+    // Hashes hold no resources and are revalidated by the size and the modification time of a jar, so they outlive builds.
+    private val ARCHIVE_HASHER = ArchiveHasher()
+
+    fun register(project: Project): Provider<ColonistCacheService> {
+      return project.gradle.sharedServices.registerIfAbsent(NAME, ColonistCacheService::class.java) { spec ->
+        spec.parameters.maxCachedClassCount.set(
+          project.providers.gradleProperty(MAX_CACHED_CLASS_COUNT_PROPERTY).map { it.toInt() }.orElse(DEFAULT_MAX_CACHED_CLASS_COUNT)
+        )
+      }
+    }
+  }
+}
@@ -19,20 +19,32 @@ package com.joom.colonist.plugin
 import com.joom.colonist.processor.ColonistOutputFactory
 import com.joom.colonist.processor.ColonistParameters
 import com.joom.colonist.processor.ColonistProcessor
+import com.joom.colonist.processor.ColonistResult
+import com.joom.colonist.processor.ColonistResultSerializer
+import com.joom.colonist.processor.ColonistStatistics
+import com.joom.colonist.processor.ColonistStatisticsSerializer
+import com.joom.colonist.processor.commons.computeContentHash
 import com.joom.colonist.processor.watermark.WatermarkChecker
 import java.io.File
 import org.gradle.api.DefaultTask
 import org.gradle.api.GradleScriptException
 import org.gradle.api.logging.LogLevel
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.Classpath
 import org.gradle.api.tasks.Input
 import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.OutputDirectories
 import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
 import org.gradle.api.tasks.TaskAction
+import org.gradle.work.DisableCachingByDefault
 
+@DisableCachingByDefault(because = "Patches compiler output in place, the out-of-place transform mode is cacheable")
 open class ColonistTask : DefaultTask() {
   @InputFiles
+  @PathSensitive(PathSensitivity.RELATIVE)
   var backupDirs: List<File> = emptyList()
 
   @OutputDirectories
@@ -52,6 +64,21 @@ open class ColonistTask : DefaultTask() {
   @Input
   var discoverSettlers: Boolean = false
 
+  @Internal
+  var cacheDir: File? = null
+
+  @Internal
+  var maxLoadedClassCount: Int? = null
+
+  @Internal
+  var cacheService: Provider<ColonistCacheService>? = null
+
+  @Internal
+  var manifestFile: File? = null
+
+  @Internal
+  var reportFile: File? = null
+
   init {
     logging.captureStandardOutput(LogLevel.INFO)
   }
@@ -69,20 +96,72 @@ open class ColonistTask : DefaultTask() {
       discoveryClasspath = classpath.map { it.toPath() },
       bootClasspath = bootClasspath.map { it.toPath() },
       discoverSettlers = discoverSettlers,
+      cacheDirectory = cacheDir?.toPath(),
+      maxLoadedClassCount = maxLoadedClassCount,
+      classMirrorCache = cacheService?.orNull?.classMirrorCache,
+      archiveHasher = cacheService?.orNull?.archiveHasher,
     )
 
     logger.info("Starting Colonist processor: {}", parameters)
-    try {
-      ColonistProcessor.process(parameters)
+    manifestFile?.let { file ->
+      // Generated files may be named after their content, e.g. the class index of a library, so the previous ones are removed.
+      ColonistResultSerializer.read(file.toPath())?.let { removeFilesFromManifest(it, it.generatedFiles) }
+      file.delete()
+    }
+    val statistics = ColonistStatistics()
+    val result = try {
+      ColonistProcessor.process(parameters, statistics = statistics)
     } catch (exception: Exception) {
       throw GradleScriptException("Colonist processor failed to process files", exception)
     }
+
+    manifestFile?.let { ColonistResultSerializer.write(result, it.toPath()) }
+    reportFile?.let { ColonistStatisticsSerializer.write(statistics, it.toPath()) }
+    logger.info("Colonist statistics:\n{}", ColonistStatisticsSerializer.summarize(statistics))
   }
 
   fun clean() {
     validate()
     logger.info("Removing patched files from {}", classesDirs)
 
+    val manifest = manifestFile?.let { ColonistResultSerializer.read(it.toPath()) }
+    if (manifest != null) {
+      removeFilesFromManifest(manifest)
+    } else {
+      removeWatermarkedFiles()
+    }
+
+    manifestFile?.delete()
+
+    sourceDir?.let { sourceDir ->
+      logger.info("Removing a directory with generated source files: {}", sourceDir)
+      sourceDir.deleteRecursively()
+    }
+  }
+
+  private fun removeFilesFromManifest(manifest: ColonistResult, paths: Collection<String> = manifest.fileHashes.keys) {
+    for (classesDir in classesDirs) {
+      paths.forEach { path ->
+        val hash = manifest.fileHashes[path] ?: return@forEach
+        val file = classesDir.resolve(path)
+        if (file.isFile && file.toPath().computeContentHash() == hash) {
+          logger.debug("File {} was patched - removing", file)
+          file.delete()
+          removeEmptyDirectories(file.parentFile, classesDir)
+        }
+      }
+    }
+  }
+
+  private fun removeEmptyDirectories(directory: File, classesDir: File) {
+    var current: File? = directory
+    while (current != null && current != classesDir && current.list()?.isEmpty() == true) {
+      current.delete()
+      current = current.parentFile
+    }
+  }
+
+  private fun removeWatermarkedFiles() {
     for (classesDir in classesDirs) {
       if (!classesDir.exists()) {
         continue
@@ -102,11 +181,6 @@ open class ColonistTask : DefaultTask() {
         }
       }
     }
-
-    sourceDir?.let { sourceDir ->
-      logger.info("Removing a directory with generated source files: {}", sourceDir)
-      sourceDir.deleteRecursively()
-    }
   }
 
   private fun validate() {
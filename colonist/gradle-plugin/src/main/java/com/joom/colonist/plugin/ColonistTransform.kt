@@ -18,49 +18,82 @@
 
 package com.joom.colonist.plugin
 
+import com.android.build.api.transform.DirectoryInput
 import com.android.build.api.transform.Format
 import com.android.build.api.transform.JarInput
 import com.android.build.api.transform.QualifiedContent
+import com.android.build.api.transform.Status
 import com.android.build.api.transform.Transform
 import com.android.build.api.transform.TransformException
 import com.android.build.api.transform.TransformInvocation
+import com.joom.colonist.processor.ColonistChanges
 import com.joom.colonist.processor.ColonistOutputFactory
 import com.joom.colonist.processor.ColonistParameters
 import com.joom.colonist.processor.ColonistProcessor
+import com.joom.colonist.processor.ColonistResultSerializer
+import com.joom.colonist.processor.ColonistStatistics
+import com.joom.colonist.processor.ColonistStatisticsSerializer
+import com.joom.colonist.processor.InputChange
 import com.joom.colonist.processor.logging.getLogger
+import java.io.File
 import java.io.IOException
 import java.util.EnumSet
 
 class ColonistTransform(
-  private val extension: AndroidColonistExtension
+  private val extension: AndroidColonistExtension,
+  private val cacheDirectory: File,
 ) : Transform() {
   private val logger = getLogger()
 
   override fun transform(invocation: TransformInvocation) {
-    if (!invocation.isIncremental) {
+    val stateFile = File(invocation.context.temporaryDir, STATE_FILE_NAME)
+    val previousResult = if (invocation.isIncremental && !hasReferencedChanges(invocation)) {
+      ColonistResultSerializer.read(stateFile.toPath())
+    } else {
+      null
+    }
+    if (previousResult == null) {
       invocation.outputProvider.deleteAll()
     }
 
-    val inputs = invocation.inputs.flatMap { it.jarInputs + it.directoryInputs }
-    val inputPaths = inputs.map { it.file.toPath() }
-    val outputs = inputs.map { input ->
+    val allInputs = invocation.inputs.flatMap { it.jarInputs + it.directoryInputs }
+    val allOutputs = allInputs.map { input ->
       val format = if (input is JarInput) Format.JAR else Format.DIRECTORY
       invocation.outputProvider.getContentLocation(input.name, input.contentTypes, input.scopes, format)
     }
 
-    val outputFactory = ColonistOutputFactory.create(
-      inputPaths, outputs.map { it.toPath() }, invocation.outputProvider.getContentLocation(
-        "gen-colonist",
-        setOf(QualifiedContent.DefaultContentType.CLASSES),
-        EnumSet.of(QualifiedContent.Scope.PROJECT),
-        Format.DIRECTORY
-      ).toPath()
+    val inputs = ArrayList<QualifiedContent>()
+    val outputs = ArrayList<File>()
+    allInputs.forEachIndexed { index, input ->
+      if (input is JarInput && input.status == Status.REMOVED) {
+        logger.info("Deleting {}", allOutputs[index])
+        allOutputs[index].delete()
+      } else {
+        inputs += input
+        outputs += allOutputs[index]
+      }
+    }
+
+    val inputPaths = inputs.map { it.file.toPath() }
+    val generationPath = invocation.outputProvider.getContentLocation(
+      "gen-colonist",
+      setOf(QualifiedContent.DefaultContentType.CLASSES),
+      EnumSet.of(QualifiedContent.Scope.PROJECT),
+      Format.DIRECTORY
     )
+    val outputFactory = ColonistOutputFactory.create(inputPaths, outputs.map { it.toPath() }, generationPath.toPath())
 
     val classpath = invocation.referencedInputs.flatMap { input ->
       input.jarInputs.map { it.file } + input.directoryInputs.map { it.file }
     }
 
+    val changes = previousResult?.let { result ->
+      ColonistChanges(
+        inputChanges = inputs.indices.associate { index -> inputPaths[index] to computeInputChange(inputs[index], outputs[index]) },
+        previousResult = result
+      )
+    }
+
     val parameters = ColonistParameters(
       inputs = inputPaths,
       outputFactory = outputFactory,
@@ -68,18 +101,69 @@ class ColonistTransform(
       discoveryClasspath = classpath.map { it.toPath() },
       bootClasspath = extension.bootClasspath.map { it.toPath() },
       discoverSettlers = true,
+      cacheDirectory = cacheDirectory.toPath(),
+      maxLoadedClassCount = extension.maxLoadedClassCount,
+      changes = changes,
     )
     logger.info("Starting Colonist processor: {}", parameters)
-    try {
-      ColonistProcessor.process(parameters)
-      logger.info("Colonist finished processing")
+    val statistics = ColonistStatistics()
+    val result = try {
+      ColonistProcessor.process(parameters, statistics = statistics).also {
+        logger.info("Colonist finished processing")
+      }
     } catch (exception: IOException) {
       logger.error("Colonist failed", exception)
+      stateFile.delete()
       throw exception
     } catch (exception: Exception) {
       logger.error("Colonist failed", exception)
+      stateFile.delete()
       throw TransformException(exception)
     }
+
+    if (previousResult != null) {
+      (previousResult.generatedFiles - result.generatedFiles.toSet()).forEach { File(generationPath, it).delete() }
+    }
+
+    ColonistResultSerializer.write(result, stateFile.toPath())
+    ColonistStatisticsSerializer.write(statistics, File(invocation.context.temporaryDir, REPORT_FILE_NAME).toPath())
+    logger.info("Colonist statistics:\n{}", ColonistStatisticsSerializer.summarize(statistics))
+  }
+
+  private fun hasReferencedChanges(invocation: TransformInvocation): Boolean {
+    return invocation.referencedInputs.any { input ->
+      input.jarInputs.any { it.status != Status.NOTCHANGED } || input.directoryInputs.any { it.changedFiles.isNotEmpty() }
+    }
+  }
+
+  private fun computeInputChange(input: QualifiedContent, output: File): InputChange {
+    return when (input) {
+      is JarInput -> if (input.status == Status.NOTCHANGED) InputChange.Unchanged else InputChange.Changed
+      is DirectoryInput -> computeDirectoryInputChange(input, output)
+      else -> InputChange.Changed
+    }
+  }
+
+  private fun computeDirectoryInputChange(input: DirectoryInput, output: File): InputChange {
+    val changedPaths = HashSet<String>()
+    val removedPaths = HashSet<String>()
+    input.changedFiles.forEach { (file, status) ->
+      val path = file.relativeTo(input.file).invariantSeparatorsPath
+      when (status) {
+        Status.NOTCHANGED -> Unit
+        Status.ADDED, Status.CHANGED -> if (!file.isDirectory) changedPaths += path
+        Status.REMOVED -> {
+          File(output, path).delete()
+          removedPaths += path
+        }
+      }
+    }
+
+    return if (changedPaths.isEmpty() && removedPaths.isEmpty()) {
+      InputChange.Unchanged
+    } else {
+      InputChange.ChangedFiles(changedPaths = changedPaths, removedPaths = removedPaths)
+    }
   }
 
   override fun getName(): String {
@@ -115,11 +199,18 @@ class ColonistTransform(
     )
   }
 
+  // The previous result is kept in the temporary directory, which isn't restored with the outputs from the build cache,
+  // so a cacheable transform always processes all inputs.
   override fun isIncremental(): Boolean {
-    return false
+    return !extension.cacheable
   }
 
   override fun isCacheable(): Boolean {
     return extension.cacheable
   }
+
+  private companion object {
+    private const val STATE_FILE_NAME = "colonist-result.txt"
+    private const val REPORT_FILE_NAME = "colonist-report.json"
+  }
 }
@@ -16,29 +16,41 @@
 
 package com.joom.colonist.plugin
 
+import com.joom.colonist.processor.ColonistChanges
 import com.joom.colonist.processor.ColonistOutputFactory
 import com.joom.colonist.processor.ColonistParameters
 import com.joom.colonist.processor.ColonistProcessor
+import com.joom.colonist.processor.ColonistResult
+import com.joom.colonist.processor.ColonistResultSerializer
+import com.joom.colonist.processor.ColonistStatistics
+import com.joom.colonist.processor.ColonistStatisticsSerializer
+import com.joom.colonist.processor.InputChange
 import java.io.File
 import org.gradle.api.DefaultTask
 import org.gradle.api.GradleScriptException
 import org.gradle.api.file.ConfigurableFileCollection
 import org.gradle.api.file.Directory
 import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.FileType
 import org.gradle.api.file.RegularFile
 import org.gradle.api.file.RegularFileProperty
 import org.gradle.api.logging.LogLevel
 import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
 import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.CacheableTask
 import org.gradle.api.tasks.Classpath
 import org.gradle.api.tasks.CompileClasspath
 import org.gradle.api.tasks.Input
 import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.Optional
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.TaskAction
+import org.gradle.work.ChangeType
+import org.gradle.work.Incremental
+import org.gradle.work.InputChanges
 
 @CacheableTask
 abstract class ColonistTransformClassesTask : DefaultTask() {
@@ -46,14 +58,23 @@ abstract class ColonistTransformClassesTask : DefaultTask() {
   @get:Classpath
   abstract val inputClasses: ListProperty<RegularFile>
 
+  @get:Internal
+  abstract val inputDirectories: ListProperty<Directory>
+
+  @get:Incremental
   @get:InputFiles
   @get:Classpath
-  abstract val inputDirectories: ListProperty<Directory>
+  abstract val inputDirectoryFiles: ConfigurableFileCollection
 
   @get:InputFiles
   @get:CompileClasspath
   abstract val discoveryClasspath: ConfigurableFileCollection
 
+  // The first index of a class wins when the indices are merged, so their order is part of the input.
+  @get:InputFiles
+  @get:Classpath
+  abstract val discoveryClassIndices: ConfigurableFileCollection
+
   @get:InputFiles
   @get:CompileClasspath
   abstract val classpath: ConfigurableFileCollection
@@ -70,16 +91,40 @@ abstract class ColonistTransformClassesTask : DefaultTask() {
   @get:Optional
   abstract val outputDirectory: DirectoryProperty
 
+  @get:OutputFile
+  @get:Optional
+  abstract val stateFile: RegularFileProperty
+
+  @get:Internal
+  abstract val reportFile: RegularFileProperty
+
+  @get:Internal
+  abstract val cacheDirectory: DirectoryProperty
+
+  @get:Internal
+  abstract val maxLoadedClassCount: Property<Int>
+
+  @get:Internal
+  abstract val cacheService: Property<ColonistCacheService>
+
   @Input
   var discoverSettlers: Boolean = false
 
   init {
     logging.captureStandardOutput(LogLevel.INFO)
+    inputDirectoryFiles.from(inputDirectories)
   }
 
   @TaskAction
-  fun process() {
-    clean()
+  fun process(inputChanges: InputChanges) {
+    val previousResult = readState()
+    val changes = previousResult?.let { computeChanges(inputChanges, it) }
+    if (changes == null) {
+      logger.info("Processing all classes")
+      clean()
+    } else {
+      logger.info("Processing changed classes incrementally")
+    }
 
     val output = computeOutput().get().toPath()
 
@@ -87,17 +132,82 @@ abstract class ColonistTransformClassesTask : DefaultTask() {
       inputs = inputClasses.get().map { it.asFile.toPath() } + inputDirectories.get().map { it.asFile.toPath() },
       outputFactory = ColonistOutputFactory.create(output),
       discoveryClasspath = discoveryClasspath.map { it.toPath() },
+      discoveryClassIndices = discoveryClassIndices.map { it.toPath() }.takeIf { it.isNotEmpty() },
       classpath = classpath.map { it.toPath() },
       bootClasspath = bootClasspath.map { it.toPath() },
       discoverSettlers = discoverSettlers,
+      cacheDirectory = cacheDirectory.orNull?.asFile?.toPath(),
+      maxLoadedClassCount = maxLoadedClassCount.orNull,
+      classMirrorCache = cacheService.orNull?.classMirrorCache,
+      archiveHasher = cacheService.orNull?.archiveHasher,
+      changes = changes,
     )
 
     logger.info("Starting Colonist processor: {}", parameters)
-    try {
-      ColonistProcessor.process(parameters)
+    val statistics = ColonistStatistics()
+    val result = try {
+      ColonistProcessor.process(parameters, statistics = statistics)
     } catch (exception: Exception) {
+      stateFile.orNull?.asFile?.delete()
       throw GradleScriptException("Colonist processor failed to process files", exception)
     }
+
+    reportFile.orNull?.asFile?.let { ColonistStatisticsSerializer.write(statistics, it.toPath()) }
+    logger.info("Colonist statistics:\n{}", ColonistStatisticsSerializer.summarize(statistics))
+
+    if (previousResult != null && changes != null) {
+      deleteOutputFiles(previousResult.generatedFiles - result.generatedFiles.toSet())
+    }
+
+    writeState(result)
+  }
+
+  private fun readState(): ColonistResult? {
+    val stateFile = stateFile.orNull?.asFile ?: return null
+    return ColonistResultSerializer.read(stateFile.toPath())
+  }
+
+  private fun writeState(result: ColonistResult) {
+    val stateFile = stateFile.orNull?.asFile ?: return
+    ColonistResultSerializer.write(result, stateFile.toPath())
+  }
+
+  private fun computeChanges(inputChanges: InputChanges, previousResult: ColonistResult): ColonistChanges? {
+    if (!inputChanges.isIncremental || !outputDirectory.isPresent || output.isPresent) {
+      return null
+    }
+
+    val changedPaths = HashSet<String>()
+    val removedPaths = HashSet<String>()
+    inputChanges.getFileChanges(inputDirectoryFiles).forEach { change ->
+      if (change.fileType != FileType.DIRECTORY) {
+        if (change.changeType == ChangeType.REMOVED) {
+          removedPaths += change.normalizedPath
+        } else {
+          changedPaths += change.normalizedPath
+        }
+      }
+    }
+
+    deleteOutputFiles(removedPaths)
+
+    // All directories are merged into a single output, so a file removed from one of them may still come from another one.
+    val inputChange = InputChange.ChangedFiles(changedPaths = changedPaths, removedPaths = removedPaths)
+    return ColonistChanges(
+      inputChanges = inputDirectories.get().associate { it.asFile.toPath() to inputChange },
+      previousResult = previousResult
+    )
+  }
+
+  private fun deleteOutputFiles(paths: Collection<String>) {
+    val outputDirectory = outputDirectory.get().asFile
+    paths.forEach { path ->
+      val file = File(outputDirectory, path)
+      if (file.exists()) {
+        logger.info("Deleting {}", file)
+        file.delete()
+      }
+    }
   }
 
   private fun computeOutput(): Provider<File> {
@@ -74,11 +74,19 @@ operator fun TaskContainer.get(name: String): Task? {
 }
 
 fun Configuration.incomingJarArtifacts(componentFilter: ((ComponentIdentifier) -> Boolean)? = null): ArtifactCollection {
+  return incomingArtifacts(AndroidArtifacts.ArtifactType.CLASSES_JAR.type, componentFilter)
+}
+
+fun Configuration.incomingClassIndexArtifacts(componentFilter: ((ComponentIdentifier) -> Boolean)? = null): ArtifactCollection {
+  return incomingArtifacts(ClassIndexTransform.ARTIFACT_TYPE, componentFilter)
+}
+
+private fun Configuration.incomingArtifacts(artifactType: String, componentFilter: ((ComponentIdentifier) -> Boolean)?): ArtifactCollection {
   return incoming
     .artifactView { configuration ->
       configuration.attributes { attributes ->
         @Suppress("UnstableApiUsage")
-        attributes.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, AndroidArtifacts.ArtifactType.CLASSES_JAR.type)
+        attributes.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, artifactType)
       }
 
       componentFilter?.let {
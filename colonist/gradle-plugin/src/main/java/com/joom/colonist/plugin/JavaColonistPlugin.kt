@@ -21,9 +21,12 @@ import java.util.Locale
 import org.gradle.api.GradleException
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition
+import org.gradle.api.file.ConfigurableFileCollection
 import org.gradle.api.plugins.JavaPlugin
 import org.gradle.api.tasks.SourceSet
 import org.gradle.api.tasks.SourceSetOutput
+import org.gradle.api.tasks.TaskProvider
 import org.gradle.api.tasks.compile.JavaCompile
 
 class JavaColonistPlugin : BaseColonistPlugin() {
@@ -36,9 +39,9 @@ class JavaColonistPlugin : BaseColonistPlugin() {
 
     project.afterEvaluate {
       if (project.plugins.hasPlugin("java")) {
-        setupColonistForJava(discoverSettlers = colonist.discoverSettlers)
+        setupColonistForJava(colonist)
         if (colonist.processTest) {
-          setupColonistForJavaTest(discoverSettlers = colonist.discoverSettlers)
+          setupColonistForJavaTest(colonist)
         }
       } else {
         throw GradleException("Project should use Java plugin")
@@ -51,27 +54,105 @@ class JavaColonistPlugin : BaseColonistPlugin() {
     addDependencies(JavaPlugin.TEST_IMPLEMENTATION_CONFIGURATION_NAME)
   }
 
-  private fun setupColonistForJava(discoverSettlers: Boolean) {
+  private fun setupColonistForJava(colonist: JavaColonistPluginExtension) {
     logger.info("Setting up Colonist task for Java project {}...", project.name)
-    createTasks(project.sourceSets.main, project.tasks.compileJava, project.tasks.classes, discoverSettlers)
+    createColonistTasks(colonist, project.sourceSets.main, project.tasks.compileJava, project.tasks.classes)
   }
 
-  private fun setupColonistForJavaTest(discoverSettlers: Boolean) {
+  private fun setupColonistForJavaTest(colonist: JavaColonistPluginExtension) {
     logger.info("Setting up Colonist task for Java test project {}...", project.name)
-    createTasks(project.sourceSets.test, project.tasks.compileTestJava, project.tasks.testClasses, discoverSettlers, "test")
+    createColonistTasks(colonist, project.sourceSets.test, project.tasks.compileTestJava, project.tasks.testClasses, "test")
   }
 
-  private fun createTasks(sourceSet: SourceSet, compileTask: JavaCompile, classesTask: Task, discoverSettlers: Boolean, nameSuffix: String = "") {
+  private fun createColonistTasks(
+    colonist: JavaColonistPluginExtension,
+    sourceSet: SourceSet,
+    compileTask: JavaCompile,
+    classesTask: Task,
+    nameSuffix: String = ""
+  ) {
+    if (colonist.transformOutOfPlace) {
+      createTransformTask(sourceSet, compileTask, classesTask, colonist.discoverSettlers, colonist.maxLoadedClassCount, nameSuffix)
+    } else {
+      createTasks(sourceSet, compileTask, classesTask, colonist.discoverSettlers, colonist.maxLoadedClassCount, nameSuffix)
+    }
+  }
+
+  private fun createTransformTask(
+    sourceSet: SourceSet,
+    compileTask: JavaCompile,
+    classesTask: Task,
+    discoverSettlers: Boolean,
+    maxLoadedClassCount: Int?,
+    nameSuffix: String
+  ) {
+    val suffix = nameSuffix.capitalized()
+    val colonistDir = File(project.buildDir, getColonistRelativePath(nameSuffix))
+    val sourceSetClassesDirs = sourceSet.output.classesDirs as? ConfigurableFileCollection
+      ?: throw GradleException("Cannot replace classes directories of source set ${sourceSet.name}")
+    // Keeps the original sources of the collection, so the directories are resolved only when the task runs.
+    val classesDirs = project.files(*sourceSetClassesDirs.from.toTypedArray())
+    val classpath = compileTask.classpath - classesDirs
+
+    val taskName = "colonistTransformClasses$suffix"
+    logger.info("Creating Colonist task {}...", taskName)
+    logger.info("  Source set: {}", sourceSet.name)
+
+    val taskProvider = project.registerTask<ColonistTransformClassesTask>(taskName)
+    taskProvider.configure { task ->
+      task.description = "Transforms .class files with Colonist Processor."
+      task.dependsOn(classesDirs)
+      task.inputDirectories.set(
+        classesDirs.elements.map { locations -> locations.map { project.layout.projectDirectory.dir(it.asFile.absolutePath) } }
+      )
+      task.outputDirectory.set(File(colonistDir, TRANSFORMED_CLASSES_PATH))
+      task.stateFile.set(File(colonistDir, STATE_FILE_NAME))
+      task.reportFile.set(File(colonistDir, REPORT_FILE_NAME))
+      task.discoveryClasspath.setFrom(classpath)
+      task.classpath.setFrom(classpath)
+      task.bootClasspath.setFrom(project.provider { getBootClasspath(compileTask) })
+      task.discoverSettlers = discoverSettlers
+      task.cacheDirectory.set(getClassIndexCacheDirectory())
+      task.maxLoadedClassCount.set(maxLoadedClassCount)
+      task.cacheService.set(getCacheService())
+      task.usesService(getCacheService())
+    }
+
+    // The jar and test tasks use the source set output, while dependent projects resolve the classes variant of the outgoing
+    // configurations, which publishes the compiler output directly. Both have to see the transformed classes only.
+    sourceSetClassesDirs.setFrom(taskProvider.flatMap { it.outputDirectory })
+    replaceClassesVariantArtifacts(sourceSet, taskProvider)
+    classesTask.dependsOn(taskProvider)
+  }
+
+  private fun replaceClassesVariantArtifacts(sourceSet: SourceSet, taskProvider: TaskProvider<ColonistTransformClassesTask>) {
+    listOf(sourceSet.apiElementsConfigurationName, sourceSet.runtimeElementsConfigurationName).forEach { configurationName ->
+      val variant = project.configurations.findByName(configurationName)?.outgoing?.variants?.findByName(CLASSES_VARIANT_NAME)
+        ?: return@forEach
+      variant.artifacts.clear()
+      variant.artifact(taskProvider.flatMap { it.outputDirectory }) { artifact ->
+        artifact.type = ArtifactTypeDefinition.JVM_CLASS_DIRECTORY
+        artifact.builtBy(taskProvider)
+      }
+    }
+  }
+
+  private fun createTasks(
+    sourceSet: SourceSet,
+    compileTask: JavaCompile,
+    classesTask: Task,
+    discoverSettlers: Boolean,
+    maxLoadedClassCount: Int?,
+    nameSuffix: String = ""
+  ) {
     val suffix = nameSuffix.capitalized()
     val colonistDir = File(project.buildDir, getColonistRelativePath(nameSuffix))
     val classesDirs = getClassesDirs(sourceSet.output)
     val backupDirs = getBackupDirs(project.buildDir, colonistDir, classesDirs)
     val sourceDir = File(colonistDir, "src")
+    val manifestFile = File(colonistDir, MANIFEST_FILE_NAME)
     val classpath = compileTask.classpath.toList() - classesDirs.toSet()
-    val bootClasspath =
-      compileTask.options.bootstrapClasspath?.toList()
-        ?: System.getProperty("sun.boot.class.path")?.split(File.pathSeparator)?.map { File(it) }
-        ?: emptyList()
+    val bootClasspath = getBootClasspath(compileTask)
     val colonistTask = createColonistProcessTask(
       taskName = "colonistProcess$suffix",
       classesDirs = classesDirs,
@@ -80,15 +161,25 @@ class JavaColonistPlugin : BaseColonistPlugin() {
       classpath = classpath,
       bootClasspath = bootClasspath,
       discoverSettlers = discoverSettlers,
+      maxLoadedClassCount = maxLoadedClassCount,
+      manifestFile = manifestFile,
+      reportFile = File(colonistDir, REPORT_FILE_NAME),
     )
     val backupTask = createBackupClassFilesTask(
       taskName = "colonistBackupClasses$suffix",
       classesDirs = classesDirs,
-      backupDirs = backupDirs
+      backupDirs = backupDirs,
+      manifestFile = manifestFile,
     )
     configureTasks(colonistTask, backupTask, compileTask, classesTask)
   }
 
+  private fun getBootClasspath(compileTask: JavaCompile): List<File> {
+    return compileTask.options.bootstrapClasspath?.toList()
+      ?: System.getProperty("sun.boot.class.path")?.split(File.pathSeparator)?.map { File(it) }
+      ?: emptyList()
+  }
+
   private fun getColonistRelativePath(suffix: String): String {
     return if (suffix.isEmpty()) COLONIST_PATH else COLONIST_PATH + File.separatorChar + suffix
   }
@@ -134,6 +225,9 @@ class JavaColonistPlugin : BaseColonistPlugin() {
     classpath: List<File>,
     bootClasspath: List<File>,
     discoverSettlers: Boolean,
+    maxLoadedClassCount: Int?,
+    manifestFile: File,
+    reportFile: File,
   ): ColonistTask {
     logger.info("Creating Colonist task {}...", taskName)
     logger.info("  Source classes directories: {}", backupDirs)
@@ -147,18 +241,26 @@ class JavaColonistPlugin : BaseColonistPlugin() {
       task.classpath = classpath
       task.bootClasspath = bootClasspath
       task.discoverSettlers = discoverSettlers
+      task.maxLoadedClassCount = maxLoadedClassCount
+      task.manifestFile = manifestFile
+      task.reportFile = reportFile
+      task.cacheDir = getClassIndexCacheDirectory().get().asFile
+      task.cacheService = getCacheService()
+      task.usesService(getCacheService())
     }
   }
 
   private fun createBackupClassFilesTask(
     taskName: String,
     classesDirs: List<File>,
-    backupDirs: List<File>
+    backupDirs: List<File>,
+    manifestFile: File,
   ): BackupClassesTask {
     return project.tasks.create(taskName, BackupClassesTask::class.java) { task ->
       task.description = "Back up original .class files."
       task.classesDirs = classesDirs
       task.backupDirs = backupDirs
+      task.manifestFile = manifestFile
     }
   }
 
@@ -168,5 +270,10 @@ class JavaColonistPlugin : BaseColonistPlugin() {
 
   companion object {
     private const val COLONIST_PATH = "colonist"
+    private const val MANIFEST_FILE_NAME = "manifest.txt"
+    private const val STATE_FILE_NAME = "state.txt"
+    private const val REPORT_FILE_NAME = "report.json"
+    private const val TRANSFORMED_CLASSES_PATH = "transformed-classes"
+    private const val CLASSES_VARIANT_NAME = "classes"
   }
 }
@@ -19,4 +19,7 @@ package com.joom.colonist.plugin
 open class JavaColonistPluginExtension {
   var processTest: Boolean = true
   var discoverSettlers: Boolean = false
+  var maxLoadedClassCount: Int? = null
+  // The default in-place mode patches the compiler output, so its task is never cached. The out-of-place mode is cacheable.
+  var transformOutOfPlace: Boolean = false
 }
@@ -17,10 +17,11 @@
 package com.joom.colonist.processor
 
 import com.joom.colonist.processor.commons.associateByIndexedTo
-import com.joom.colonist.processor.commons.closeQuietly
+import com.joom.colonist.processor.commons.closeAll
 import com.joom.grip.io.FileSink
 import java.io.Closeable
 import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
 
 interface ColonistOutput : Closeable {
   fun getFileSink(input: Path): FileSink
@@ -33,12 +34,14 @@ internal class MultipleSinkOutput(private val inputs: List<Path>, private val ou
   }
 
   private val generationSink = createFileSink(generationPath)
-  private val sinksByInputs = HashMap<Path, FileSink>().also {
-    inputs.associateByIndexedTo(it, { _, input -> input }, { index, _ -> createFileSink(outputs[index]) })
+  private val outputsByInputs = HashMap<Path, Path>().also {
+    inputs.associateByIndexedTo(it, { _, input -> input }, { index, _ -> outputs[index] })
   }
+  private val sinksByInputs = ConcurrentHashMap<Path, FileSink>()
 
   override fun getFileSink(input: Path): FileSink {
-    return sinksByInputs[input] ?: error("Failed to create file sink for input $input")
+    val output = outputsByInputs[input] ?: error("Failed to create file sink for input $input")
+    return sinksByInputs.computeIfAbsent(input) { createFileSink(output) }
   }
 
   override fun getGenerationSink(): FileSink {
@@ -46,10 +49,7 @@ internal class MultipleSinkOutput(private val inputs: List<Path>, private val ou
   }
 
   override fun close() {
-    generationSink.closeQuietly()
-    sinksByInputs.forEach { (_, sink) ->
-      sink.closeQuietly()
-    }
+    (listOf(generationSink) + sinksByInputs.values).closeAll()
   }
 }
 
@@ -65,6 +65,6 @@ internal class SingleSinkOutput(path: Path) : ColonistOutput {
   }
 
   override fun close() {
-    sink.closeQuietly()
+    sink.close()
   }
 }
@@ -16,13 +16,21 @@
 
 package com.joom.colonist.processor
 
+import com.joom.colonist.processor.commons.ArchiveHasher
+import com.joom.colonist.processor.commons.ClassMirrorCache
 import java.nio.file.Path
 
 data class ColonistParameters(
   val outputFactory: ColonistOutputFactory,
   val inputs: List<Path>,
   val discoveryClasspath: List<Path>,
+  val discoveryClassIndices: List<Path>? = null,
   val classpath: List<Path>,
   val bootClasspath: List<Path>,
   val discoverSettlers: Boolean,
+  val cacheDirectory: Path? = null,
+  val maxLoadedClassCount: Int? = null,
+  val classMirrorCache: ClassMirrorCache? = null,
+  val archiveHasher: ArchiveHasher? = null,
+  val changes: ColonistChanges? = null,
 )
@@ -29,71 +29,135 @@ import com.joom.colonist.processor.analysis.SettlerDiscovererImpl
 import com.joom.colonist.processor.analysis.SettlerParserImpl
 import com.joom.colonist.processor.analysis.SettlerProducerParserImpl
 import com.joom.colonist.processor.analysis.SettlerSelectorParserImpl
+import com.joom.colonist.processor.commons.ArchiveHasher
+import com.joom.colonist.processor.commons.BootClasspathClassRegistry
+import com.joom.colonist.processor.commons.BoundedClassRegistry
+import com.joom.colonist.processor.commons.CachingClassRegistry
+import com.joom.colonist.processor.commons.CloseableClassRegistry
+import com.joom.colonist.processor.commons.CommonSuperClassResolver
+import com.joom.colonist.processor.commons.GripClassRegistry
+import com.joom.colonist.processor.commons.LazyClassRegistry
 import com.joom.colonist.processor.commons.StandaloneClassWriter
 import com.joom.colonist.processor.commons.Types
 import com.joom.colonist.processor.commons.closeQuietly
+import com.joom.colonist.processor.commons.computeContentHash
 import com.joom.colonist.processor.generation.ClassProducer
 import com.joom.colonist.processor.generation.ColonyDelegateGenerator
 import com.joom.colonist.processor.generation.ColonyPatcher
+import com.joom.colonist.processor.index.CachingClassIndexProvider
+import com.joom.colonist.processor.index.ClassHeader
+import com.joom.colonist.processor.index.ClassHeaderResolver
+import com.joom.colonist.processor.index.ClassIndex
+import com.joom.colonist.processor.index.ClassIndexProvider
+import com.joom.colonist.processor.index.ClassIndexSerializer
+import com.joom.colonist.processor.index.ClassTable
+import com.joom.colonist.processor.index.PrecomputedClassIndexProvider
+import com.joom.colonist.processor.index.ScanningClassIndexProvider
+import com.joom.colonist.processor.io.FileSegment
+import com.joom.colonist.processor.io.copyFile
+import com.joom.colonist.processor.io.createSegment
 import com.joom.colonist.processor.logging.getLogger
 import com.joom.colonist.processor.model.Colony
 import com.joom.colonist.processor.model.ColonyMarker
 import com.joom.colonist.processor.model.Settler
-import com.joom.colonist.processor.model.SettlerProducer
+import com.joom.colonist.processor.model.SettlerProducerWithSelector
 import com.joom.colonist.processor.model.SettlerSelector
-import com.joom.grip.Grip
 import com.joom.grip.GripFactory
-import com.joom.grip.classes
+import com.joom.grip.io.FileSink
 import com.joom.grip.io.FileSource
-import com.joom.grip.io.IoFactory
-import com.joom.grip.mirrors.Annotated
 import com.joom.grip.mirrors.Type
 import com.joom.grip.mirrors.getObjectTypeByInternalName
 import java.io.Closeable
 import java.nio.file.Path
+import java.util.TreeSet
+import java.util.concurrent.CancellationException
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentLinkedQueue
+import kotlin.io.path.extension
+import kotlin.io.path.isRegularFile
 import kotlin.streams.toList
 import org.objectweb.asm.ClassReader
-import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.ClassWriter
 
 class ColonistProcessor(
   inputs: List<Path>,
   outputFactory: ColonistOutputFactory,
-  private val grip: Grip,
-  private val annotationIndex: AnnotationIndex,
+  private val classRegistry: CloseableClassRegistry,
+  private val classTable: ClassTable,
+  classHeaderResolver: ClassHeaderResolver,
+  private val inputClassIndex: ClassIndex,
   private val colonyMarkerParser: ColonyMarkerParser,
   private val colonyParser: ColonyParser,
   private val colonyValidator: ColonyValidator,
   private val settlerDiscoverer: SettlerDiscoverer,
   private val discoverSettlers: Boolean,
-  private val errorReporter: ErrorReporter
+  private val changes: ColonistChanges?,
+  private val errorReporter: ErrorReporter,
+  private val statistics: ColonistStatistics,
 ) : Closeable {
 
   private val logger = getLogger()
 
   private val output = outputFactory.createOutput()
-  private val fileSourcesByInputs = inputs.associateWith { IoFactory.createFileSource(it) }
+  private val commonSuperClassResolver = CommonSuperClassResolver(classHeaderResolver)
+  private val fileSourcesByInputs = inputs.associateWith { createFileSource(it) }
 
-  fun processClasses() {
-    val colonies = findColonies()
-    checkErrors()
-    val processedColonies = copyAndPatchClasses(colonies)
+  fun processClasses(): ColonistResult {
+    try {
+      val colonies = statistics.measure("findColonies") { findColonies() }
+      checkErrors()
+      val entriesByInputs = statistics.measure("listSourceEntries") { listSourceEntries() }
+      val changedPaths = changes?.let { collectChangedPaths(it, entriesByInputs) }
+      val inputChanges = statistics.measure("resolveInputChanges") { resolveInputChanges(colonies, entriesByInputs, changedPaths) }
+      val patchedFiles = ConcurrentHashMap<String, String>()
+      val processedColonies = statistics.measure("copyAndPatchClasses") {
+        copyAndPatchClasses(colonies, entriesByInputs, inputChanges, patchedFiles)
+      }
 
-    if (discoverSettlers) {
-      val coloniesWithSettlers = findSettlersForColonies(colonies, processedColonies)
+      if (!discoverSettlers) {
+        val generatedFiles = statistics.measure("generateClassIndex") { generateClassIndex() }
+        return ColonistResult(
+          patchedFiles = patchedFiles.keys.sorted(),
+          generatedFiles = generatedFiles.keys.sorted(),
+          settlerFiles = emptyList(),
+          fileHashes = (patchedFiles + generatedFiles).toSortedMap()
+        )
+      }
+
+      val previousResult = changes?.previousResult
+      if (previousResult != null && changedPaths != null && !shouldDiscoverSettlers(colonies, changedPaths, previousResult)) {
+        logger.info("Changed classes don't affect settlers, skipping settler discovery")
+        val generatedFileHashes = previousResult.generatedFiles.mapNotNull { path -> previousResult.fileHashes[path]?.let { path to it } }
+        return previousResult.copy(patchedFiles = patchedFiles.keys.sorted(), fileHashes = (patchedFiles + generatedFileHashes).toSortedMap())
+      }
+
+      val coloniesWithSettlers = statistics.measure("findSettlers") { findSettlersForColonies(colonies, processedColonies) }
       checkErrors()
-      generateColonyDelegates(coloniesWithSettlers)
+      val generatedFiles = statistics.measure("generateColonyDelegates") { generateColonyDelegates(coloniesWithSettlers) }
+      return ColonistResult(
+        patchedFiles = patchedFiles.keys.sorted(),
+        generatedFiles = generatedFiles.keys.sorted(),
+        settlerFiles = coloniesWithSettlers.flatMapTo(TreeSet()) { colonyWithSettlers ->
+          colonyWithSettlers.settlers.map { it.type.toClassPath() }
+        }.toList(),
+        fileHashes = (patchedFiles + generatedFiles).toSortedMap(),
+        settlerHierarchyFiles = collectSettlerHierarchyFiles(colonies, coloniesWithSettlers),
+      )
+    } catch (exception: CancellationException) {
+      checkErrors()
+      throw exception
     }
   }
 
   override fun close() {
-    output.closeQuietly()
-    fileSourcesByInputs.values.forEach {
-      it.closeQuietly()
+    try {
+      output.close()
+    } finally {
+      fileSourcesByInputs.values.forEach {
+        it.closeQuietly()
+      }
+      classRegistry.closeQuietly()
     }
-    grip.closeQuietly()
   }
 
   private fun findColonies(): Collection<Colony> {
@@ -102,6 +166,7 @@ class ColonistProcessor(
   }
 
   private fun findColonyMarkers(): Collection<ColonyMarker> {
+    val annotationIndex = AnnotationIndex.build(classTable, setOf(Types.COLONY_TYPE))
     val colonyAnnotationTypes = annotationIndex.findClassesWithAnnotation(Types.COLONY_TYPE)
     return colonyAnnotationTypes.mapNotNull { colonyAnnotationType ->
       try {
@@ -115,15 +180,13 @@ class ColonistProcessor(
 
   private fun findSettlersForColonies(colonies: Collection<Colony>, processedColonies: Collection<Colony>): Collection<ColonyWithSettlers> {
     val processedColoniesSet = processedColonies.toSet()
-    val cache = ConcurrentHashMap<SettlerProducerWithSelector, Collection<Settler>>()
+    val settlersByQuery = settlerDiscoverer.discoverSettlers(colonies.mapTo(LinkedHashSet()) { it.toSettlerQuery() })
     return colonies
       .parallelStream()
       .map { colony ->
-        val selector = colony.marker.settlerSelector
-        val producer = colony.marker.settlerProducer
-        val settlers = cache.computeIfAbsent(SettlerProducerWithSelector(producer, selector)) {
-          settlerDiscoverer.discoverSettlers(selector, producer)
-        }
+        errorReporter.checkCancelled()
+        val settlers = settlersByQuery.getValue(colony.toSettlerQuery())
+        statistics.addSettlerCount(colony.type.className, settlers.size)
 
         if (!isColonyProcessed(colony, processedColoniesSet)) {
           errorReporter.reportError(
@@ -137,15 +200,20 @@ class ColonistProcessor(
       .toList()
   }
 
+  private fun Colony.toSettlerQuery(): SettlerProducerWithSelector {
+    return SettlerProducerWithSelector(marker.settlerProducer, marker.settlerSelector)
+  }
+
   private fun isColonyProcessed(colony: Colony, processedColonies: Collection<Colony>): Boolean {
-    return processedColonies.contains(colony) || grip.classRegistry.getClassMirror(colony.type).interfaces.contains(Types.COLONY_FOUNDER_TYPE)
+    return processedColonies.contains(colony) || classRegistry.getClassMirror(colony.type).interfaces.contains(Types.COLONY_FOUNDER_TYPE)
   }
 
   private fun findColonies(colonyMarkers: Collection<ColonyMarker>): Collection<Colony> {
-    return colonyMarkers.flatMap { findColonies(it) }
+    val annotationIndex = AnnotationIndex.build(classTable, colonyMarkers.mapTo(HashSet()) { it.type })
+    return colonyMarkers.flatMap { findColonies(it, annotationIndex) }
   }
 
-  private fun findColonies(colonyMarker: ColonyMarker): Collection<Colony> {
+  private fun findColonies(colonyMarker: ColonyMarker, annotationIndex: AnnotationIndex): Collection<Colony> {
     val colonyTypes = annotationIndex.findClassesWithAnnotation(colonyMarker.type)
     return colonyTypes.mapNotNull { colonyType ->
       try {
@@ -157,31 +225,196 @@ class ColonistProcessor(
     }
   }
 
-  private fun copyAndPatchClasses(colonies: Collection<Colony>): Collection<Colony> {
+  private fun listSourceEntries(): Map<Path, List<SourceEntry>> {
+    return fileSourcesByInputs.entries
+      .parallelStream()
+      .map { (input, fileSource) ->
+        val entries = ArrayList<SourceEntry>()
+        fileSource.listFiles { path, type ->
+          entries += SourceEntry(path, type)
+        }
+        entries.sortBy { it.path }
+        input to entries
+      }
+      .toList()
+      .toMap()
+  }
+
+  private fun collectChangedPaths(changes: ColonistChanges, entriesByInputs: Map<Path, List<SourceEntry>>): Set<String> {
+    val changedPaths = HashSet<String>()
+    entriesByInputs.forEach { (input, entries) ->
+      when (val inputChange = changes.inputChanges[input] ?: InputChange.Unchanged) {
+        InputChange.Unchanged -> Unit
+        InputChange.Changed -> entries.mapTo(changedPaths) { it.path.removeVersionPrefix() }
+        is InputChange.ChangedFiles -> {
+          inputChange.changedPaths.mapTo(changedPaths) { it.removeVersionPrefix() }
+          inputChange.removedPaths.mapTo(changedPaths) { it.removeVersionPrefix() }
+        }
+      }
+    }
+
+    return changedPaths
+  }
+
+  private fun resolveInputChanges(
+    colonies: Collection<Colony>,
+    entriesByInputs: Map<Path, List<SourceEntry>>,
+    changedPaths: Set<String>?
+  ): Map<Path, InputChange> {
+    if (changes == null || changedPaths == null) {
+      return entriesByInputs.mapValues { InputChange.Changed }
+    }
+
+    // A colony has to be patched again when its marker changes, and a class patched by the previous run
+    // has to be copied again when it isn't a colony anymore.
+    val colonyPaths = colonies.mapTo(HashSet()) { it.type.toClassPath() }
+    val affectedColonyPaths = colonies.filter { it.marker.type.toClassPath() in changedPaths }.mapTo(HashSet()) { it.type.toClassPath() }
+    val stalePatchedPaths = changes.previousResult.patchedFiles.filterTo(HashSet()) { it.removeVersionPrefix() !in colonyPaths }
+
+    return entriesByInputs.mapValues { (input, entries) ->
+      when (val inputChange = changes.inputChanges[input] ?: InputChange.Unchanged) {
+        InputChange.Unchanged -> {
+          val isAffected = entries.any { it.path in stalePatchedPaths || it.path.removeVersionPrefix() in affectedColonyPaths }
+          if (isAffected) InputChange.Changed else InputChange.Unchanged
+        }
+
+        InputChange.Changed -> inputChange
+        is InputChange.ChangedFiles -> inputChange.copy(changedPaths = inputChange.changedPaths + stalePatchedPaths)
+      }
+    }
+  }
+
+  private fun shouldDiscoverSettlers(colonies: Collection<Colony>, changedPaths: Set<String>, previousResult: ColonistResult): Boolean {
+    val delegatePaths = colonies.mapTo(HashSet()) { it.delegate.toClassPath() }
+    if (delegatePaths != previousResult.generatedFiles.toSet()) {
+      return true
+    }
+
+    val colonyPaths = colonies.flatMapTo(HashSet()) { listOf(it.type.toClassPath(), it.marker.type.toClassPath()) }
+    val settlerPaths = previousResult.settlerFiles.toSet() + previousResult.settlerHierarchyFiles
+    // A change of a class with subtypes can add settlers to or remove them from the selection through those subtypes.
+    val subclassedPaths = classTable.classes.flatMapTo(HashSet()) { header ->
+      (listOfNotNull(header.superType) + header.interfaces).map { it.toClassPath() }
+    }
+    val selectors = colonies.mapTo(HashSet()) { it.marker.settlerSelector }
+    val annotationTypes = selectors.mapNotNullTo(HashSet()) { (it as? SettlerSelector.Annotation)?.annotationType }
+    val superTypes = selectors.mapNotNullTo(HashSet()) { (it as? SettlerSelector.SuperType)?.superType }
+
+    return changedPaths.any { path ->
+      if (path in colonyPaths || path in settlerPaths || path in subclassedPaths) {
+        return@any true
+      }
+
+      if (!path.endsWith(CLASS_EXTENSION)) {
+        return@any false
+      }
+
+      val header = classTable.findClass(getObjectTypeByInternalName(path.removeSuffix(CLASS_EXTENSION))) ?: return@any false
+      header.annotations.any { it in annotationTypes } || (superTypes.isNotEmpty() && isSubtypeOfAny(header, superTypes))
+    }
+  }
+
+  private fun collectSettlerHierarchyFiles(colonies: Collection<Colony>, coloniesWithSettlers: Collection<ColonyWithSettlers>): List<String> {
+    val superTypes = colonies.mapNotNullTo(HashSet()) { (it.marker.settlerSelector as? SettlerSelector.SuperType)?.superType }
+    val hierarchyTypes = HashSet<Type.Object>(superTypes)
+    if (superTypes.isNotEmpty()) {
+      classTable.classes.filter { isSubtypeOfAny(it, superTypes) }.mapTo(hierarchyTypes) { it.type }
+    }
+
+    coloniesWithSettlers.forEach { colonyWithSettlers ->
+      colonyWithSettlers.settlers.forEach { settler ->
+        classTable.findClass(settler.type)?.let { collectSuperTypes(it, hierarchyTypes) }
+      }
+    }
+
+    return hierarchyTypes.mapTo(TreeSet()) { it.toClassPath() }.toList()
+  }
+
+  private fun collectSuperTypes(header: ClassHeader, types: MutableSet<Type.Object>) {
+    val queue = ArrayDeque<ClassHeader>()
+    queue += header
+    while (queue.isNotEmpty()) {
+      val current = queue.removeFirst()
+      for (type in listOfNotNull(current.superType) + current.interfaces) {
+        if (types.add(type)) {
+          classTable.findClass(type)?.let { queue += it }
+        }
+      }
+    }
+  }
+
+  private fun isSubtypeOfAny(header: ClassHeader, superTypes: Set<Type.Object>): Boolean {
+    val visited = HashSet<Type.Object>()
+    val queue = ArrayDeque<ClassHeader>()
+    queue += header
+    while (queue.isNotEmpty()) {
+      val current = queue.removeFirst()
+      for (type in listOfNotNull(current.superType) + current.interfaces) {
+        if (type in superTypes) {
+          return true
+        }
+
+        if (visited.add(type)) {
+          classTable.findClass(type)?.let { queue += it }
+        }
+      }
+    }
+
+    return false
+  }
+
+  private fun copyAndPatchClasses(
+    colonies: Collection<Colony>,
+    entriesByInputs: Map<Path, List<SourceEntry>>,
+    inputChanges: Map<Path, InputChange>,
+    patchedFiles: MutableMap<String, String>
+  ): Collection<Colony> {
     val processedColonies = ConcurrentLinkedQueue<Colony>()
-    val colonyTypeToColoniesMap = colonies.groupBy { it.type }
-    fileSourcesByInputs.entries.parallelStream().forEach { (input, fileSource) ->
-      val fileSink = output.getFileSink(input)
-      logger.debug("Copy from {} to {}", fileSource, fileSink)
-      fileSource.listFiles { path, type ->
-        logger.debug("Copy file {} of type {}", path, type)
-        when (type) {
-          FileSource.EntryType.CLASS -> {
-            val classReader = ClassReader(fileSource.readFile(path))
-            val classWriter = StandaloneClassWriter(
-              classReader, ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, grip.classRegistry
-            )
-            val classType = getObjectTypeByInternalName(classReader.className)
-            val classVisitor = createClassVisitorForType(classType, classWriter, colonyTypeToColoniesMap)
-            classReader.accept(classVisitor, ClassReader.SKIP_FRAMES)
-            fileSink.createFile(path, classWriter.toByteArray())
-            processedColonies += colonyTypeToColoniesMap[classType].orEmpty()
+    val colonyPathToColoniesMap = colonies.groupBy { it.type.toClassPath() }
+    // Inputs that share a sink are written in input order, so a jar produced from several inputs has a stable entry order.
+    val inputsBySinks = LinkedHashMap<FileSink, MutableList<Path>>()
+    fileSourcesByInputs.keys.forEach { input ->
+      val entries = entriesByInputs.getValue(input)
+      if (inputChanges.getValue(input) == InputChange.Unchanged) {
+        logger.debug("Skip unchanged {}", input)
+        val previousFileHashes = changes?.previousResult?.fileHashes.orEmpty()
+        entries.forEach { entry ->
+          colonyPathToColoniesMap[entry.path.removeVersionPrefix()]?.let { patchedColonies ->
+            processedColonies += patchedColonies
+            patchedFiles[entry.path] = previousFileHashes[entry.path].orEmpty()
           }
-
-          FileSource.EntryType.FILE -> fileSink.createFile(path, fileSource.readFile(path))
-          FileSource.EntryType.DIRECTORY -> fileSink.createDirectory(path)
         }
+      } else {
+        inputsBySinks.getOrPut(output.getFileSink(input)) { ArrayList() }.add(input)
       }
+    }
+
+    inputsBySinks.entries.parallelStream().forEach { (fileSink, inputs) ->
+      logger.debug("Copy from {} to {}", inputs, fileSink)
+      inputs
+        .flatMap { input ->
+          val inputChange = inputChanges.getValue(input)
+          entriesByInputs.getValue(input)
+            .filter { shouldCopyFile(it, inputChange, colonyPathToColoniesMap) }
+            .map { InputEntry(input, it) }
+        }
+        .chunked(CHUNK_SIZE)
+        // Finished segments wait in memory until the preceding ones are committed, so only a window of them is built at a time.
+        .chunked(MAX_PENDING_SEGMENT_COUNT)
+        .forEach { window ->
+          window
+            .parallelStream()
+            .map { chunk -> copyAndPatchChunk(fileSink, chunk, colonyPathToColoniesMap, processedColonies, patchedFiles) }
+            .forEachOrdered { segment ->
+              errorReporter.checkCancelled()
+              try {
+                segment.commit()
+              } catch (exception: Exception) {
+                errorReporter.reportFatalError("Failed to write files to $fileSink", exception)
+                errorReporter.checkCancelled()
+              }
+            }
+        }
 
       fileSink.flush()
     }
@@ -191,28 +424,145 @@ class ColonistProcessor(
     return processedColonies
   }
 
-  private fun createClassVisitorForType(
-    type: Type.Object,
-    input: ClassVisitor,
-    colonyTypeToColoniesMap: Map<Type.Object, Collection<Colony>>
-  ): ClassVisitor {
-    return colonyTypeToColoniesMap[type]?.let { ColonyPatcher(input, it) } ?: input
+  private fun copyAndPatchChunk(
+    fileSink: FileSink,
+    chunk: List<InputEntry>,
+    colonyPathToColoniesMap: Map<String, Collection<Colony>>,
+    processedColonies: MutableCollection<Colony>,
+    patchedFiles: MutableMap<String, String>
+  ): FileSegment {
+    return fileSink.createSegment().also { segment ->
+      chunk.forEach { (input, entry) ->
+        errorReporter.checkCancelled()
+        try {
+          copyAndPatchFile(fileSourcesByInputs.getValue(input), segment, entry, colonyPathToColoniesMap)?.let { patchedFile ->
+            processedColonies += patchedFile.colonies
+            patchedFiles[entry.path] = patchedFile.hash
+          }
+        } catch (exception: Exception) {
+          errorReporter.reportFatalError("Failed to copy ${entry.path} from $input", exception)
+          errorReporter.checkCancelled()
+        }
+      }
+    }
+  }
+
+  private fun shouldCopyFile(entry: SourceEntry, inputChange: InputChange, colonyPathToColoniesMap: Map<String, Collection<Colony>>): Boolean {
+    // Libraries generate their own class index and applications consume indices of their dependencies.
+    if (PrecomputedClassIndexProvider.isClassIndexPath(entry.path)) {
+      return false
+    }
+
+    if (inputChange !is InputChange.ChangedFiles) {
+      return true
+    }
+
+    val path = entry.path
+    return when (entry.type) {
+      FileSource.EntryType.DIRECTORY -> true
+      FileSource.EntryType.FILE -> path in inputChange.changedPaths || path in inputChange.removedPaths
+      FileSource.EntryType.CLASS ->
+        path in inputChange.changedPaths || path in inputChange.removedPaths || path.removeVersionPrefix() in colonyPathToColoniesMap
+    }
+  }
+
+  private fun copyAndPatchFile(
+    fileSource: FileSource,
+    fileSink: FileSegment,
+    entry: SourceEntry,
+    colonyPathToColoniesMap: Map<String, Collection<Colony>>
+  ): PatchedFile? {
+    val path = entry.path
+    logger.debug("Copy file {} of type {}", path, entry.type)
+    when (entry.type) {
+      FileSource.EntryType.CLASS -> {
+        val colonies = colonyPathToColoniesMap[path.removeVersionPrefix()]
+        if (colonies != null) {
+          val inputData = fileSource.readFile(path)
+          val data = patchColonies(ClassReader(inputData), colonies)
+          fileSink.createFile(path, data)
+          statistics.increment(ColonistStatistics.Counter.CLASSES_READ)
+          statistics.increment(ColonistStatistics.Counter.CLASSES_PATCHED)
+          statistics.increment(ColonistStatistics.Counter.BYTES_READ, inputData.size.toLong())
+          statistics.increment(ColonistStatistics.Counter.BYTES_WRITTEN, data.size.toLong())
+          return PatchedFile(colonies, data.computeContentHash())
+        }
+
+        countCopiedBytes(fileSink.copyFile(fileSource, path))
+      }
+
+      FileSource.EntryType.FILE -> countCopiedBytes(fileSink.copyFile(fileSource, path))
+      FileSource.EntryType.DIRECTORY -> fileSink.createDirectory(path)
+    }
+
+    return null
+  }
+
+  private fun countCopiedBytes(size: Int) {
+    statistics.increment(ColonistStatistics.Counter.BYTES_READ, size.toLong())
+    statistics.increment(ColonistStatistics.Counter.BYTES_WRITTEN, size.toLong())
+  }
+
+  private fun patchColonies(classReader: ClassReader, colonies: Collection<Colony>): ByteArray {
+    val classWriter = StandaloneClassWriter(
+      classReader, ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, commonSuperClassResolver
+    )
+    classReader.accept(ColonyPatcher(classWriter, colonies), ClassReader.SKIP_FRAMES)
+    return classWriter.toByteArray()
   }
 
-  private fun generateColonyDelegates(coloniesWithSettlers: Collection<ColonyWithSettlers>) {
+  private fun Type.Object.toClassPath(): String {
+    return "$internalName$CLASS_EXTENSION"
+  }
+
+  private fun String.removeVersionPrefix(): String {
+    if (!startsWith(VERSIONS_PREFIX)) {
+      return this
+    }
+
+    val versionEnd = indexOf('/', VERSIONS_PREFIX.length)
+    return if (versionEnd < 0) this else substring(versionEnd + 1)
+  }
+
+  private fun generateClassIndex(): Map<String, String> {
+    val data = ClassIndexSerializer.toByteArray(inputClassIndex)
+    val hash = data.computeContentHash()
+    val path = PrecomputedClassIndexProvider.getClassIndexPath(hash)
+    logger.debug("Generate class index with {} classes", inputClassIndex.classes.size)
+    val generationSink = output.getGenerationSink()
+    generationSink.createFile(path, data)
+    generationSink.flush()
+    statistics.increment(ColonistStatistics.Counter.BYTES_WRITTEN, data.size.toLong())
+    return mapOf(path to hash)
+  }
+
+  private fun generateColonyDelegates(coloniesWithSettlers: Collection<ColonyWithSettlers>): Map<String, String> {
     val generationSink = output.getGenerationSink()
     val classProducer = ClassProducer(generationSink, errorReporter)
-    coloniesWithSettlers.parallelStream().forEach { colonyWithSettlers ->
-      classProducer.produceClass(
-        colonyWithSettlers.colony.delegate.internalName, ColonyDelegateGenerator(grip.classRegistry).generate(
+    val generatedFiles = LinkedHashMap<String, String>()
+    val delegates = coloniesWithSettlers
+      .parallelStream()
+      .map { colonyWithSettlers ->
+        errorReporter.checkCancelled()
+        colonyWithSettlers.colony.delegate to ColonyDelegateGenerator(commonSuperClassResolver).generate(
           colony = colonyWithSettlers.colony,
           settlers = colonyWithSettlers.settlers,
         )
-      )
+      }
+      .toList()
+      .sortedBy { (delegate, _) -> delegate.internalName }
+
+    delegates.forEach { (delegate, data) ->
+      classProducer.produceClass(delegate.internalName, data)
+      statistics.increment(ColonistStatistics.Counter.CLASSES_GENERATED)
+      statistics.increment(ColonistStatistics.Counter.BYTES_WRITTEN, data.size.toLong())
+      generatedFiles[delegate.toClassPath()] = data.computeContentHash()
     }
 
     generationSink.flush()
     checkErrors()
+
+    return generatedFiles
   }
 
   private fun checkErrors() {
@@ -230,81 +580,186 @@ class ColonistProcessor(
     val settlers: Collection<Settler>
   )
 
-  private data class SettlerProducerWithSelector(
-    val producer: SettlerProducer,
-    val selector: SettlerSelector,
+  private class PatchedFile(
+    val colonies: Collection<Colony>,
+    val hash: String,
   )
 
-  companion object {
-    fun process(parameters: ColonistParameters, errorReporter: ErrorReporter = ErrorReporter()) {
-      val grip = GripFactory.INSTANCE.create(parameters.inputs + parameters.classpath + parameters.bootClasspath + parameters.discoveryClasspath)
+  private class SourceEntry(
+    val path: String,
+    val type: FileSource.EntryType,
+  )
 
-      warmUpGripCaches(grip, parameters.inputs + parameters.discoveryClasspath)
+  private data class InputEntry(
+    val input: Path,
+    val entry: SourceEntry,
+  )
 
-      val annotationIndex = buildAnnotationIndex(grip, parameters.inputs + parameters.discoveryClasspath)
+  companion object {
+    private const val CLASS_EXTENSION = ".class"
+    private const val CHUNK_SIZE = 256
+    private val MAX_PENDING_SEGMENT_COUNT = Runtime.getRuntime().availableProcessors() * 2
+    private const val VERSIONS_PREFIX = "META-INF/versions/"
+
+    fun process(
+      parameters: ColonistParameters,
+      errorReporter: ErrorReporter = ErrorReporter(),
+      statistics: ColonistStatistics = ColonistStatistics(),
+    ): ColonistResult {
+      val archiveHasher = parameters.archiveHasher ?: ArchiveHasher()
+      val classIndexProvider = createClassIndexProvider(parameters.cacheDirectory, archiveHasher, statistics)
+      // Boot jars are indexed once per content hash, the snapshot replaces them unless a mirror of a boot class is needed.
+      val bootSnapshotPaths = if (parameters.cacheDirectory != null) parameters.bootClasspath.filter { it.isJarFile() } else emptyList()
+      val bootClassTable = statistics.measure("loadBootClassIndex") {
+        ClassTable.build(loadClassIndices(classIndexProvider, bootSnapshotPaths))
+      }
+      val classRegistry = createClassRegistry(parameters, archiveHasher, bootSnapshotPaths, bootClassTable, statistics)
+      val classHeaderResolver = ClassHeaderResolver(classRegistry, bootClassTable)
+
+      val precomputedClassIndexProvider = PrecomputedClassIndexProvider(classIndexProvider, statistics)
+      // Libraries write a class index for their own inputs, so they must never read one from them.
+      val inputClassIndexProvider = if (parameters.discoverSettlers) precomputedClassIndexProvider else classIndexProvider
+      val (classTable, inputClassIndex) = statistics.measure("loadClassIndices") {
+        val inputClassIndices = loadClassIndices(inputClassIndexProvider, parameters.inputs)
+        val discoveryClassIndices = parameters.discoveryClassIndices?.let { readClassIndices(it) }
+          ?: loadClassIndices(precomputedClassIndexProvider, parameters.discoveryClasspath)
+        ClassTable.build(inputClassIndices + discoveryClassIndices) to
+          ClassIndex(inputClassIndices.flatMap { it.classes }.sortedBy { it.type.internalName })
+      }
+      statistics.increment(ColonistStatistics.Counter.CLASSES_INDEXED, classTable.classes.size.toLong())
 
       val colonyMarkerParser = ColonyMarkerParserImpl(
-        grip = grip,
+        classRegistry = classRegistry,
         settlerSelectorParser = SettlerSelectorParserImpl,
         settlerProducerParser = SettlerProducerParserImpl,
         settlerAcceptorParser = SettlerAcceptorParserImpl
       )
 
       val colonyParser = ColonyParserImpl(
-        grip = grip,
+        classRegistry = classRegistry,
       )
 
       val settlerParser = SettlerParserImpl(
-        grip = grip,
+        classRegistry = classRegistry,
         settlerProducerParser = SettlerProducerParserImpl,
         settlerAcceptorParser = SettlerAcceptorParserImpl
       )
 
       val settlerDiscoverer = SettlerDiscovererImpl(
-        grip = grip,
-        inputs = parameters.inputs + parameters.discoveryClasspath,
+        classRegistry = classRegistry,
+        classTable = classTable,
         settlerParser = settlerParser,
-        errorReporter = errorReporter
+        errorReporter = errorReporter,
+        classHeaderResolver = classHeaderResolver,
       )
 
       val colonyValidator = ColonyValidatorImpl(
         errorReporter = errorReporter,
       )
 
-      ColonistProcessor(
+      return ColonistProcessor(
         inputs = parameters.inputs,
         outputFactory = parameters.outputFactory,
-        grip = grip,
-        annotationIndex = annotationIndex,
+        classRegistry = classRegistry,
+        classTable = classTable,
+        classHeaderResolver = classHeaderResolver,
+        inputClassIndex = inputClassIndex,
         colonyMarkerParser = colonyMarkerParser,
         colonyParser = colonyParser,
         settlerDiscoverer = settlerDiscoverer,
         colonyValidator = colonyValidator,
         discoverSettlers = parameters.discoverSettlers,
-        errorReporter = errorReporter
-      ).use {
-        it.processClasses()
+        changes = parameters.changes,
+        errorReporter = errorReporter,
+        statistics = statistics,
+      ).let { processor ->
+        val result = try {
+          processor.processClasses()
+        } catch (exception: Throwable) {
+          try {
+            processor.close()
+          } catch (closeException: Throwable) {
+            exception.addSuppressed(closeException)
+          }
+          throw exception
+        }
+
+        statistics.measure("closeOutputs") { processor.close() }
+        result
       }
     }
 
-    private fun warmUpGripCaches(grip: Grip, inputs: List<Path>) {
-      inputs.flatMap { grip.fileRegistry.findTypesForPath(it) }
+    private fun createClassRegistry(
+      parameters: ColonistParameters,
+      archiveHasher: ArchiveHasher,
+      bootSnapshotPaths: List<Path>,
+      bootClassTable: ClassTable,
+      statistics: ColonistStatistics,
+    ): CloseableClassRegistry {
+      val paths = parameters.inputs + parameters.classpath + parameters.bootClasspath + parameters.discoveryClasspath
+      val gripPaths = paths - bootSnapshotPaths.toSet()
+      val maxLoadedClassCount = parameters.maxLoadedClassCount
+      val gripClassRegistry = if (maxLoadedClassCount != null) {
+        BoundedClassRegistry({ GripFactory.INSTANCE.create(gripPaths) }, maxLoadedClassCount)
+      } else {
+        LazyClassRegistry { GripClassRegistry(GripFactory.INSTANCE.create(gripPaths)) }
+      }
+
+      val classRegistry = if (bootSnapshotPaths.isEmpty()) {
+        gripClassRegistry
+      } else {
+        BootClasspathClassRegistry(gripClassRegistry, bootClassTable) { GripClassRegistry(GripFactory.INSTANCE.create(bootSnapshotPaths)) }
+      }
+
+      // A bounded registry closes its Grip to drop loaded mirrors, while cached mirrors need the Grip that loaded them to stay open.
+      val classMirrorCache = parameters.classMirrorCache?.takeIf { maxLoadedClassCount == null } ?: return classRegistry
+      val archiveHashes = paths
+        .distinct()
         .parallelStream()
-        .map { grip.classRegistry.getClassMirror(it) }
+        .map { path -> archiveHasher.getArchiveHash(path)?.let { path to it } }
         .toList()
+        .filterNotNull()
+        .toMap()
+      // Boot classes are cached under a hash of the whole boot classpath, as the jar of a boot class is unknown without opening it.
+      val bootArchiveHash = bootSnapshotPaths
+        .takeIf { snapshotPaths -> snapshotPaths.isNotEmpty() && snapshotPaths.all { it in archiveHashes } }
+        ?.joinToString(separator = "\n") { archiveHashes.getValue(it) }
+        ?.toByteArray()
+        ?.computeContentHash()
+      return CachingClassRegistry(classRegistry, classMirrorCache, gripPaths, archiveHashes, bootClassTable, bootArchiveHash, statistics)
     }
 
-    private fun buildAnnotationIndex(grip: Grip, inputs: List<Path>): AnnotationIndex {
-      return AnnotationIndex.build {
-        val query = grip select classes from inputs where annotated()
-        for (mirror in query.execute().classes) {
-          for (annotation in mirror.annotations) {
-            addAnnotatedType(mirror.type, annotation.type)
+    private fun createClassIndexProvider(cacheDirectory: Path?, archiveHasher: ArchiveHasher, statistics: ColonistStatistics): ClassIndexProvider {
+      val scanningClassIndexProvider = object : ClassIndexProvider {
+        override fun getClassIndex(path: Path): ClassIndex {
+          return ScanningClassIndexProvider.getClassIndex(path).also { classIndex ->
+            statistics.increment(ColonistStatistics.Counter.CLASSES_READ, classIndex.classes.size.toLong())
           }
         }
       }
+
+      return if (cacheDirectory != null) {
+        CachingClassIndexProvider(cacheDirectory, scanningClassIndexProvider, statistics, archiveHasher)
+      } else {
+        scanningClassIndexProvider
+      }
     }
 
-    private fun annotated() = { _: Grip, mirror: Annotated -> mirror.annotations.isNotEmpty() }
+    private fun Path.isJarFile(): Boolean {
+      return isRegularFile() && extension.endsWith("jar", ignoreCase = true)
+    }
+
+    private fun readClassIndices(paths: List<Path>): List<ClassIndex>? {
+      return paths.map { path ->
+        ClassIndexSerializer.read(path) ?: return null
+      }
+    }
+
+    private fun loadClassIndices(classIndexProvider: ClassIndexProvider, inputs: List<Path>): List<ClassIndex> {
+      return inputs
+        .parallelStream()
+        .map { classIndexProvider.getClassIndex(it) }
+        .toList()
+    }
   }
 }
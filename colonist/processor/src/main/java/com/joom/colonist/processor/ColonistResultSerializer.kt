@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+object ColonistResultSerializer {
+  private const val HEADER = "colonist-result 3"
+  private const val PATCHED_PREFIX = "P "
+  private const val GENERATED_PREFIX = "G "
+  private const val SETTLER_PREFIX = "S "
+  private const val SETTLER_HIERARCHY_PREFIX = "T "
+  private const val HASH_PREFIX = "H "
+
+  fun write(result: ColonistResult, file: Path) {
+    file.parent?.let { Files.createDirectories(it) }
+    Files.newBufferedWriter(file).use { writer ->
+      writer.appendLine(HEADER)
+      result.patchedFiles.forEach { writer.append(PATCHED_PREFIX).appendLine(it) }
+      result.generatedFiles.forEach { writer.append(GENERATED_PREFIX).appendLine(it) }
+      result.settlerFiles.forEach { writer.append(SETTLER_PREFIX).appendLine(it) }
+      result.settlerHierarchyFiles.forEach { writer.append(SETTLER_HIERARCHY_PREFIX).appendLine(it) }
+      result.fileHashes.forEach { (path, hash) ->
+        if (hash.isNotEmpty()) {
+          writer.append(HASH_PREFIX).append(hash).append(' ').appendLine(path)
+        }
+      }
+    }
+  }
+
+  fun read(file: Path): ColonistResult? {
+    if (!Files.isRegularFile(file)) {
+      return null
+    }
+
+    val lines = Files.readAllLines(file)
+    if (lines.firstOrNull() != HEADER) {
+      return null
+    }
+
+    val patchedFiles = ArrayList<String>()
+    val generatedFiles = ArrayList<String>()
+    val settlerFiles = ArrayList<String>()
+    val settlerHierarchyFiles = ArrayList<String>()
+    val fileHashes = HashMap<String, String>()
+    lines.asSequence().drop(1).filter { it.isNotEmpty() }.forEach { line ->
+      when {
+        line.startsWith(PATCHED_PREFIX) -> patchedFiles += line.substring(PATCHED_PREFIX.length)
+        line.startsWith(GENERATED_PREFIX) -> generatedFiles += line.substring(GENERATED_PREFIX.length)
+        line.startsWith(SETTLER_PREFIX) -> settlerFiles += line.substring(SETTLER_PREFIX.length)
+        line.startsWith(SETTLER_HIERARCHY_PREFIX) -> settlerHierarchyFiles += line.substring(SETTLER_HIERARCHY_PREFIX.length)
+        line.startsWith(HASH_PREFIX) -> {
+          val separator = line.indexOf(' ', HASH_PREFIX.length)
+          if (separator < 0) {
+            return null
+          }
+          fileHashes[line.substring(separator + 1)] = line.substring(HASH_PREFIX.length, separator)
+        }
+
+        else -> return null
+      }
+    }
+
+    return ColonistResult(
+      patchedFiles = patchedFiles,
+      generatedFiles = generatedFiles,
+      settlerFiles = settlerFiles,
+      fileHashes = fileHashes,
+      settlerHierarchyFiles = settlerHierarchyFiles,
+    )
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+
+class ColonistStatistics {
+  private val phaseQueue = ConcurrentLinkedQueue<Phase>()
+  private val counterValues = ConcurrentHashMap<Counter, AtomicLong>()
+  private val settlerCounts = ConcurrentHashMap<String, Int>()
+
+  val phases: List<Phase>
+    get() = phaseQueue.toList()
+
+  val counters: Map<Counter, Long>
+    get() = Counter.values().associateWith { counterValues[it]?.get() ?: 0L }
+
+  val settlerCountsByColony: Map<String, Int>
+    get() = settlerCounts.toSortedMap()
+
+  inline fun <T> measure(phase: String, action: () -> T): T {
+    val wallTimeStart = System.nanoTime()
+    val cpuTimesStart = getWorkerCpuTimes()
+    try {
+      return action()
+    } finally {
+      val wallTime = System.nanoTime() - wallTimeStart
+      addPhase(Phase(phase, wallTimeNanos = wallTime, cpuTimeNanos = computeCpuTime(cpuTimesStart, getWorkerCpuTimes())))
+    }
+  }
+
+  fun increment(counter: Counter, delta: Long = 1) {
+    counterValues.computeIfAbsent(counter) { AtomicLong() }.addAndGet(delta)
+  }
+
+  fun addSettlerCount(colony: String, count: Int) {
+    settlerCounts[colony] = count
+  }
+
+  @PublishedApi
+  internal fun addPhase(phase: Phase) {
+    phaseQueue += phase
+  }
+
+  // Phases spread their work over the common pool, so CPU time is summed over the calling thread and the pool workers.
+  // Threads of other Gradle workers aren't counted, unless they run tasks in the common pool at the same time.
+  @PublishedApi
+  internal fun getWorkerCpuTimes(): Map<Long, Long> {
+    val threadMXBean = ManagementFactory.getThreadMXBean()
+    if (!threadMXBean.isThreadCpuTimeSupported) {
+      return emptyMap()
+    }
+
+    val currentThreadId = Thread.currentThread().id
+    return threadMXBean.getThreadInfo(threadMXBean.allThreadIds)
+      .filterNotNull()
+      .filter { it.threadId == currentThreadId || it.threadName.startsWith(COMMON_POOL_THREAD_NAME_PREFIX) }
+      .associate { it.threadId to threadMXBean.getThreadCpuTime(it.threadId) }
+      .filterValues { it >= 0 }
+  }
+
+  @PublishedApi
+  internal fun computeCpuTime(startCpuTimes: Map<Long, Long>, endCpuTimes: Map<Long, Long>): Long {
+    return endCpuTimes.entries.sumOf { (threadId, cpuTime) -> cpuTime - (startCpuTimes[threadId] ?: 0L) }
+  }
+
+  class Phase(
+    val name: String,
+    val wallTimeNanos: Long,
+    val cpuTimeNanos: Long,
+  )
+
+  enum class Counter(val key: String) {
+    CLASSES_INDEXED("classesIndexed"),
+    CLASSES_READ("classesRead"),
+    CLASSES_PATCHED("classesPatched"),
+    CLASSES_GENERATED("classesGenerated"),
+    BYTES_READ("bytesRead"),
+    BYTES_WRITTEN("bytesWritten"),
+    CLASS_INDEX_CACHE_HITS("classIndexCacheHits"),
+    CLASS_INDEX_CACHE_MISSES("classIndexCacheMisses"),
+    PRECOMPUTED_CLASS_INDEX_HITS("precomputedClassIndexHits"),
+    CLASS_MIRROR_CACHE_HITS("classMirrorCacheHits"),
+    CLASS_MIRROR_CACHE_MISSES("classMirrorCacheMisses"),
+  }
+
+  private companion object {
+    private const val COMMON_POOL_THREAD_NAME_PREFIX = "ForkJoinPool.commonPool-worker-"
+  }
+}
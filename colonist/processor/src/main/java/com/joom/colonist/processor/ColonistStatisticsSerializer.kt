@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Locale
+
+object ColonistStatisticsSerializer {
+  private const val NANOS_IN_MILLISECOND = 1_000_000.0
+
+  fun write(statistics: ColonistStatistics, file: Path) {
+    file.parent?.let { Files.createDirectories(it) }
+    Files.newBufferedWriter(file).use { writer ->
+      writer.appendLine("{")
+      writer.appendLine("  \"phases\": [")
+      statistics.phases.forEachIndexed { index, phase ->
+        writer.append("    {\"name\": ").append(phase.name.toJsonString())
+        writer.append(", \"wallTimeMs\": ").append(phase.wallTimeNanos.toMilliseconds())
+        writer.append(", \"cpuTimeMs\": ").append(phase.cpuTimeNanos.toMilliseconds())
+        writer.appendLine(if (index < statistics.phases.size - 1) "}," else "}")
+      }
+      writer.appendLine("  ],")
+      writer.appendLine("  \"counters\": {")
+      writer.appendEntries(statistics.counters.entries.map { (counter, value) -> counter.key to value.toString() })
+      writer.appendLine("  },")
+      writer.appendLine("  \"settlersByColony\": {")
+      writer.appendEntries(statistics.settlerCountsByColony.entries.map { (colony, count) -> colony to count.toString() })
+      writer.appendLine("  }")
+      writer.appendLine("}")
+    }
+  }
+
+  fun summarize(statistics: ColonistStatistics): String {
+    return buildString {
+      statistics.phases.forEach { phase ->
+        append("  ").append(phase.name).append(": ")
+        append(phase.wallTimeNanos.toMilliseconds()).append(" ms wall, ")
+        append(phase.cpuTimeNanos.toMilliseconds()).appendLine(" ms CPU")
+      }
+      statistics.counters.forEach { (counter, value) ->
+        append("  ").append(counter.key).append(": ").appendLine(value)
+      }
+      append("  settlers: ").append(statistics.settlerCountsByColony.values.sum())
+      append(" in ").append(statistics.settlerCountsByColony.size).append(" colonies")
+    }
+  }
+
+  private fun Appendable.appendEntries(entries: List<Pair<String, String>>) {
+    entries.forEachIndexed { index, (key, value) ->
+      append("    ").append(key.toJsonString()).append(": ").append(value)
+      appendLine(if (index < entries.size - 1) "," else "")
+    }
+  }
+
+  private fun Long.toMilliseconds(): String {
+    return String.format(Locale.ROOT, "%.3f", this / NANOS_IN_MILLISECOND)
+  }
+
+  private fun String.toJsonString(): String {
+    return buildString {
+      append('"')
+      this@toJsonString.forEach { char ->
+        when {
+          char == '"' || char == '\\' -> append('\\').append(char)
+          char < ' ' -> append(String.format(Locale.ROOT, "\\u%04x", char.code))
+          else -> append(char)
+        }
+      }
+      append('"')
+    }
+  }
+}
@@ -16,15 +16,22 @@
 
 package com.joom.colonist.processor
 
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentLinkedQueue
+
 class ErrorReporter {
-  private val errors = ArrayList<Exception>()
+  private val errors = ConcurrentLinkedQueue<Exception>()
+
+  @Volatile
+  var isCancelled: Boolean = false
+    private set
 
   fun hasErrors(): Boolean {
     return errors.isNotEmpty()
   }
 
   fun getErrors(): List<Exception> {
-    return errors
+    return errors.sortedBy { it.message.orEmpty() }
   }
 
   fun reportError(errorMessage: String) {
@@ -38,4 +45,19 @@ class ErrorReporter {
   fun reportError(error: Exception) {
     errors.add(error)
   }
+
+  fun reportFatalError(errorMessage: String, cause: Throwable) {
+    reportFatalError(ProcessingException(errorMessage, cause))
+  }
+
+  fun reportFatalError(error: Exception) {
+    reportError(error)
+    isCancelled = true
+  }
+
+  fun checkCancelled() {
+    if (isCancelled) {
+      throw CancellationException("Processing is cancelled after a fatal error")
+    }
+  }
 }
@@ -16,31 +16,33 @@
 
 package com.joom.colonist.processor
 
-import com.joom.grip.io.DirectoryFileSink
+import com.joom.colonist.processor.io.DirectoryFileSink
+import com.joom.colonist.processor.io.DirectoryFileSource
+import com.joom.colonist.processor.io.ZipFileSink
+import com.joom.colonist.processor.io.ZipFileSource
 import com.joom.grip.io.EmptyFileSink
 import com.joom.grip.io.FileSink
-import com.joom.grip.io.JarFileSink
+import com.joom.grip.io.FileSource
+import com.joom.grip.io.IoFactory
 import java.nio.file.Path
-import java.util.Collections
 import kotlin.io.path.exists
 import kotlin.io.path.extension
 import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
 
 internal fun createFileSink(outputFile: Path): FileSink {
   return when (outputFile.sourceType) {
     FileType.EMPTY -> EmptyFileSink
     FileType.DIRECTORY -> DirectoryFileSink(outputFile)
-    FileType.JAR -> PatchedJarFileSink(JarFileSink(outputFile)).synchronized()
+    FileType.JAR -> ZipFileSink(outputFile)
   }
 }
 
-private class PatchedJarFileSink(private val delegate: FileSink) : FileSink by delegate {
-  private val directories = Collections.synchronizedSet(HashSet<String>())
-
-  override fun createDirectory(path: String) {
-    if (directories.add(path)) {
-      delegate.createDirectory(path)
-    }
+internal fun createFileSource(inputFile: Path): FileSource {
+  return when {
+    inputFile.extension.endsWith("jar", ignoreCase = true) && inputFile.isRegularFile() -> ZipFileSource(inputFile)
+    inputFile.isDirectory() -> DirectoryFileSource(inputFile, IoFactory.createFileSource(inputFile))
+    else -> IoFactory.createFileSource(inputFile)
   }
 }
 
@@ -56,34 +58,3 @@ private enum class FileType {
   DIRECTORY,
   JAR,
 }
-
-private fun FileSink.synchronized(): FileSink {
-  return if (this !is SynchronizedFileSink) SynchronizedFileSink(this) else this
-}
-
-private class SynchronizedFileSink(private val delegate: FileSink) : FileSink by delegate {
-  private val lock = Any()
-  override fun createFile(path: String, data: ByteArray) {
-    synchronized(lock) {
-      delegate.createFile(path, data)
-    }
-  }
-
-  override fun createDirectory(path: String) {
-    synchronized(lock) {
-      delegate.createDirectory(path)
-    }
-  }
-
-  override fun close() {
-    synchronized(lock) {
-      delegate.close()
-    }
-  }
-
-  override fun flush() {
-    synchronized(lock) {
-      delegate.flush()
-    }
-  }
-}
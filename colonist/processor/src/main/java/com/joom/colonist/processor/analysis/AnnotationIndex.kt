@@ -16,6 +16,7 @@
 
 package com.joom.colonist.processor.analysis
 
+import com.joom.colonist.processor.index.ClassTable
 import com.joom.grip.mirrors.Type
 
 interface AnnotationIndex {
@@ -38,5 +39,17 @@ interface AnnotationIndex {
     inline fun build(body: Builder.() -> Unit): AnnotationIndex {
       return Builder().also(body).build()
     }
+
+    fun build(classTable: ClassTable, annotationTypes: Set<Type.Object>): AnnotationIndex {
+      return build {
+        for (header in classTable.classes) {
+          for (annotationType in header.annotations) {
+            if (annotationType in annotationTypes) {
+              addAnnotatedType(header.type, annotationType)
+            }
+          }
+        }
+      }
+    }
   }
 }
@@ -17,7 +17,7 @@
 package com.joom.colonist.processor.analysis
 
 import com.joom.colonist.processor.model.ColonyMarker
-import com.joom.grip.Grip
+import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.Type
 
 interface ColonyMarkerParser {
@@ -25,14 +25,14 @@ interface ColonyMarkerParser {
 }
 
 class ColonyMarkerParserImpl(
-  private val grip: Grip,
+  private val classRegistry: ClassRegistry,
   private val settlerSelectorParser: SettlerSelectorParser,
   private val settlerProducerParser: SettlerProducerParser,
   private val settlerAcceptorParser: SettlerAcceptorParser
 ) : ColonyMarkerParser {
 
   override fun parseColonyMarker(colonyAnnotationType: Type.Object): ColonyMarker {
-    val mirror = grip.classRegistry.getClassMirror(colonyAnnotationType)
+    val mirror = classRegistry.getClassMirror(colonyAnnotationType)
     val settlerSelector = mirror.getSettlerSelector(settlerSelectorParser)
     val settlerProducer = mirror.getSettlerProducer(settlerProducerParser)
     val settlerAcceptor = mirror.getSettlerAcceptor(settlerAcceptorParser)
@@ -23,7 +23,7 @@ import com.joom.colonist.processor.model.Colony
 import com.joom.colonist.processor.model.ColonyMarker
 import com.joom.colonist.processor.model.SettlerAcceptor
 import com.joom.colonist.processor.model.SettlerProducer
-import com.joom.grip.Grip
+import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.ClassMirror
 import com.joom.grip.mirrors.MethodMirror
 import com.joom.grip.mirrors.Type
@@ -35,11 +35,11 @@ interface ColonyParser {
 }
 
 class ColonyParserImpl(
-  private val grip: Grip,
+  private val classRegistry: ClassRegistry,
 ) : ColonyParser {
 
   override fun parseColony(colonyType: Type.Object, colonyMarker: ColonyMarker): Colony {
-    val mirror = grip.classRegistry.getClassMirror(colonyType)
+    val mirror = classRegistry.getClassMirror(colonyType)
     val delegate = getObjectType("L__colonist__${colonyType.sanitizedInternalName}_${colonyMarker.type.sanitizedInternalName}_Delegate;")
     val settlerProducer = findColonyCallbackMethod(mirror, Types.ON_PRODUCE_SETTLER_TYPE, colonyMarker.type, Types.CLASS_TYPE)
     val settlerAcceptor = findColonyCallbackMethod(mirror, Types.ON_ACCEPT_SETTLER_TYPE, colonyMarker.type, computeAcceptParameterType(colonyMarker))
@@ -18,60 +18,97 @@ package com.joom.colonist.processor.analysis
 
 import com.joom.colonist.processor.ErrorReporter
 import com.joom.colonist.processor.commons.Types
+import com.joom.colonist.processor.index.ClassHeader
+import com.joom.colonist.processor.index.ClassHeaderResolver
+import com.joom.colonist.processor.index.ClassHierarchy
+import com.joom.colonist.processor.index.ClassTable
+import com.joom.colonist.processor.logging.getLogger
 import com.joom.colonist.processor.model.Settler
 import com.joom.colonist.processor.model.SettlerProducer
+import com.joom.colonist.processor.model.SettlerProducerWithSelector
 import com.joom.colonist.processor.model.SettlerSelector
-import com.joom.grip.Grip
-import com.joom.grip.annotatedWith
-import com.joom.grip.classes
-import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.Type
 import com.joom.grip.mirrors.isAbstract
 import com.joom.grip.mirrors.isInterface
 import com.joom.grip.mirrors.isPublic
-import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
 
 interface SettlerDiscoverer {
   fun discoverSettlers(settlerSelector: SettlerSelector, settlerProducer: SettlerProducer): Collection<Settler>
+  fun discoverSettlers(queries: Collection<SettlerProducerWithSelector>): Map<SettlerProducerWithSelector, Collection<Settler>>
 }
 
 class SettlerDiscovererImpl(
-  private val grip: Grip,
-  private val inputs: List<Path>,
+  private val classRegistry: ClassRegistry,
+  private val classTable: ClassTable,
   private val settlerParser: SettlerParser,
   private val errorReporter: ErrorReporter,
+  private val classHeaderResolver: ClassHeaderResolver = ClassHeaderResolver(classRegistry),
 ) : SettlerDiscoverer {
 
+  private val logger = getLogger()
+  private val classHierarchy by lazy { ClassHierarchy.build(classTable, ::resolveClassHeader) }
+
   override fun discoverSettlers(settlerSelector: SettlerSelector, settlerProducer: SettlerProducer): Collection<Settler> {
-    return when (settlerSelector) {
-      is SettlerSelector.Annotation -> selectSettlersByAnnotation(settlerSelector)
-      is SettlerSelector.SuperType -> selectSettlersBySuperType(settlerSelector)
-      is SettlerSelector.Registered -> TODO("Registered selectors aren't supported yet")
-    }.let { filterProducibleSettlers(it, settlerSelector, settlerProducer) }
+    val query = SettlerProducerWithSelector(settlerProducer, settlerSelector)
+    return discoverSettlers(listOf(query)).getValue(query)
   }
 
-  private fun selectSettlersByAnnotation(selector: SettlerSelector.Annotation): Collection<Settler> {
-    val query = grip select classes from inputs where annotatedWith(selector.annotationType)
-    return query.execute().classes.mapNotNull {
-      if (!it.isPublic) {
-        errorReporter.reportError("Settler selected by ${selector.describe()} should be a public class [${it.type.className}]")
-        return@mapNotNull null
+  override fun discoverSettlers(queries: Collection<SettlerProducerWithSelector>): Map<SettlerProducerWithSelector, Collection<Settler>> {
+    val selectors = queries.mapTo(LinkedHashSet()) { it.selector }
+    val annotationIndex = buildAnnotationIndex(selectors)
+    val headersBySelector = selectors.associateWith { selectClasses(it, annotationIndex) }
+    val settlersByType = parseSettlers(headersBySelector.values)
+    val settlersBySelector = headersBySelector.mapValues { (selector, headers) ->
+      headers.mapNotNull { header ->
+        if (!header.isPublic) {
+          errorReporter.reportError("Settler selected by ${selector.describe()} should be a public class [${header.type.className}]")
+          return@mapNotNull null
+        }
+
+        settlersByType.getValue(header.type)
       }
+    }
 
-      settlerParser.parseSettler(it.type)
+    return queries.associateWith { query ->
+      filterProducibleSettlers(settlersBySelector.getValue(query.selector), query.selector, query.producer)
     }
   }
 
-  private fun selectSettlersBySuperType(selector: SettlerSelector.SuperType): Collection<Settler> {
-    val query = grip select classes from inputs where isSubtypeOf(selector.superType)
-    return query.execute().classes.mapNotNull {
-      if (!it.isPublic) {
-        errorReporter.reportError("Settler selected by ${selector.describe()} should be a public class [${it.type.className}]")
-        return@mapNotNull null
-      }
+  private fun buildAnnotationIndex(selectors: Collection<SettlerSelector>): AnnotationIndex {
+    val annotationTypes = selectors.mapNotNullTo(HashSet()) { (it as? SettlerSelector.Annotation)?.annotationType }
+    return AnnotationIndex.build(classTable, annotationTypes)
+  }
+
+  private fun selectClasses(selector: SettlerSelector, annotationIndex: AnnotationIndex): Collection<ClassHeader> {
+    return when (selector) {
+      is SettlerSelector.Annotation -> selectClassesByAnnotation(selector, annotationIndex)
+      is SettlerSelector.SuperType -> selectClassesBySuperType(selector)
+      is SettlerSelector.Registered -> TODO("Registered selectors aren't supported yet")
+    }
+  }
 
-      settlerParser.parseSettler(it.type)
+  private fun selectClassesByAnnotation(selector: SettlerSelector.Annotation, annotationIndex: AnnotationIndex): Collection<ClassHeader> {
+    val types = annotationIndex.findClassesWithAnnotation(selector.annotationType)
+    return types.mapNotNull { classTable.findClass(it) }
+  }
+
+  private fun selectClassesBySuperType(selector: SettlerSelector.SuperType): Collection<ClassHeader> {
+    return if (selector.superType == Types.OBJECT_TYPE) classTable.classes else classHierarchy.findSubtypes(selector.superType)
+  }
+
+  private fun parseSettlers(headers: Collection<Collection<ClassHeader>>): Map<Type.Object, Settler> {
+    val types = headers.flatMapTo(LinkedHashSet()) { selectedHeaders ->
+      selectedHeaders.mapNotNull { header -> header.type.takeIf { header.isPublic } }
+    }
+
+    val settlersByType = ConcurrentHashMap<Type.Object, Settler>()
+    types.parallelStream().forEach { type ->
+      settlersByType[type] = settlerParser.parseSettler(type)
     }
+
+    return settlersByType
   }
 
   private fun filterProducibleSettlers(settlers: Collection<Settler>, selector: SettlerSelector, producer: SettlerProducer): Collection<Settler> {
@@ -83,7 +120,7 @@ class SettlerDiscovererImpl(
       SettlerProducer.Callback,
       SettlerProducer.Class -> true
       SettlerProducer.Constructor -> {
-        val mirror = grip.classRegistry.getClassMirror(settler.type)
+        val mirror = classRegistry.getClassMirror(settler.type)
 
         if (mirror.isInterface || mirror.isAbstract) {
           return false
@@ -110,58 +147,12 @@ class SettlerDiscovererImpl(
     }
   }
 
-  private fun isSubtypeOf(baseType: Type.Object): (Grip, ClassMirror) -> Boolean {
-    if (baseType == Types.OBJECT_TYPE) {
-      return { _, _ -> true }
-    }
-
-    val resolver = SubtypeResolver(grip, baseType)
-    return { _, mirror -> resolver.isSubtype(mirror) }
-  }
-
-  private class SubtypeResolver(
-    private val grip: Grip,
-    private val baseType: Type.Object
-  ) {
-
-    private val isInterface = grip.classRegistry.getClassMirror(baseType).isInterface
-
-    private val cache = HashMap<Type.Object, Boolean>().apply {
-      put(baseType, true)
-    }
-
-    fun isSubtype(mirror: ClassMirror): Boolean {
-      return when {
-        isInterface -> isSubtypeOfInterface(mirror.type)
-        !mirror.isInterface -> isSubtypeOfClass(mirror.type)
-        else -> false
-      }
-    }
-
-    private fun isSubtypeOfClass(type: Type.Object): Boolean {
-      return cache.getOrPut(type) {
-        if (type == baseType) {
-          true
-        } else {
-          val mirror = grip.classRegistry.getClassMirror(type)
-          mirror.superType?.let { isSubtypeOfClass(it) } ?: false
-        }
-      }
-    }
-
-    private fun isSubtypeOfInterface(type: Type.Object): Boolean {
-      return cache.getOrPut(type) {
-        if (type == baseType) {
-          true
-        } else {
-          val mirror = grip.classRegistry.getClassMirror(type)
-          if (mirror.interfaces.any { isSubtypeOfInterface(it) }) {
-            true
-          } else {
-            mirror.superType?.let { isSubtypeOfInterface(it) } ?: false
-          }
-        }
-      }
+  private fun resolveClassHeader(type: Type.Object): ClassHeader? {
+    return try {
+      classHeaderResolver.resolveClassHeader(type)
+    } catch (exception: Exception) {
+      logger.debug("Failed to resolve class {}", type.className, exception)
+      null
     }
   }
 }
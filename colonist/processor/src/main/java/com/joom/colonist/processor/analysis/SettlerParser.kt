@@ -18,7 +18,7 @@ package com.joom.colonist.processor.analysis
 
 import com.joom.colonist.processor.commons.isKotlinObject
 import com.joom.colonist.processor.model.Settler
-import com.joom.grip.Grip
+import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.Type
 
 interface SettlerParser {
@@ -26,13 +26,13 @@ interface SettlerParser {
 }
 
 class SettlerParserImpl(
-  private val grip: Grip,
+  private val classRegistry: ClassRegistry,
   private val settlerProducerParser: SettlerProducerParser,
   private val settlerAcceptorParser: SettlerAcceptorParser
 ) : SettlerParser {
 
   override fun parseSettler(settlerType: Type.Object): Settler {
-    val mirror = grip.classRegistry.getClassMirror(settlerType)
+    val mirror = classRegistry.getClassMirror(settlerType)
     val settlerProducer = mirror.getSettlerProducerOrNull(settlerProducerParser)
     val settlerAcceptor = mirror.getSettlerAcceptorOrNull(settlerAcceptorParser)
     val isKotlinObject = mirror.isKotlinObject()
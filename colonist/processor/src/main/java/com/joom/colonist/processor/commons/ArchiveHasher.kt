@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.io.path.extension
+import kotlin.io.path.isRegularFile
+
+// Computes content hashes of jars and reuses them until the size or the modification time of a jar changes, so unchanged
+// jars are read only once.
+class ArchiveHasher {
+  private val archiveHashes = ConcurrentHashMap<Path, ArchiveHash>()
+
+  fun getArchiveHash(path: Path): String? {
+    if (!path.isRegularFile() || !path.extension.endsWith("jar", ignoreCase = true)) {
+      return null
+    }
+
+    val size = Files.size(path)
+    val lastModified = Files.getLastModifiedTime(path).toMillis()
+    archiveHashes[path]?.let { archiveHash ->
+      if (archiveHash.size == size && archiveHash.lastModified == lastModified) {
+        return archiveHash.hash
+      }
+    }
+
+    val hash = path.computeContentHash()
+    archiveHashes[path] = ArchiveHash(size, lastModified, hash)
+    return hash
+  }
+
+  override fun toString(): String {
+    return "ArchiveHasher(archiveCount=${archiveHashes.size})"
+  }
+
+  private class ArchiveHash(
+    val size: Long,
+    val lastModified: Long,
+    val hash: String,
+  )
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.index.ClassTable
+import com.joom.grip.mirrors.AnnotationMirror
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import java.nio.file.Path
+
+// Boot classes are described by a snapshot of their headers, so the boot classpath is opened only if a mirror of a boot
+// class is requested. Boot classes take precedence over classes with the same name, as they do at runtime.
+class BootClasspathClassRegistry(
+  private val delegate: CloseableClassRegistry,
+  private val bootClassTable: ClassTable,
+  bootClassRegistryFactory: () -> CloseableClassRegistry,
+) : CloseableClassRegistry {
+
+  private val bootClassRegistry = lazy(bootClassRegistryFactory)
+
+  override fun getClassMirror(type: Type.Object): ClassMirror {
+    return selectClassRegistry(type).getClassMirror(type)
+  }
+
+  override fun getAnnotationMirror(type: Type.Object): AnnotationMirror {
+    return selectClassRegistry(type).getAnnotationMirror(type)
+  }
+
+  override fun findPathForType(type: Type.Object): Path? {
+    return selectClassRegistry(type).findPathForType(type)
+  }
+
+  override fun close() {
+    delegate.closeQuietly()
+    if (bootClassRegistry.isInitialized()) {
+      bootClassRegistry.value.closeQuietly()
+    }
+  }
+
+  private fun selectClassRegistry(type: Type.Object): CloseableClassRegistry {
+    return if (bootClassTable.findClass(type) != null) bootClassRegistry.value else delegate
+  }
+}
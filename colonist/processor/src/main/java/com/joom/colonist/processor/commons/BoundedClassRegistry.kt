@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.logging.getLogger
+import com.joom.grip.Grip
+import com.joom.grip.mirrors.AnnotationMirror
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import java.nio.file.Path
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+// Keeps at most maxLoadedClassCount recently used mirrors. Grip caches every mirror it loads, so it is recreated once it
+// holds as many evicted mirrors as the registry keeps, which bounds memory without reloading the mirrors still in use.
+class BoundedClassRegistry(
+  private val gripFactory: () -> Grip,
+  private val maxLoadedClassCount: Int,
+) : CloseableClassRegistry {
+
+  init {
+    require(maxLoadedClassCount >= 1) { "maxLoadedClassCount should be positive but was $maxLoadedClassCount" }
+  }
+
+  private val logger = getLogger()
+  private val lock = ReentrantReadWriteLock()
+  private var evictedClassCount = 0
+  private val classMirrors = object : LinkedHashMap<Type.Object, ClassMirror>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Type.Object, ClassMirror>): Boolean {
+      if (size <= maxLoadedClassCount) {
+        return false
+      }
+
+      evictedClassCount += 1
+      return true
+    }
+  }
+
+  private var grip = gripFactory()
+
+  override fun getClassMirror(type: Type.Object): ClassMirror {
+    synchronized(classMirrors) { classMirrors[type] }?.let { return it }
+
+    val mirror = lock.read { grip.classRegistry.getClassMirror(type) }
+    val shouldRecreateGrip = synchronized(classMirrors) {
+      classMirrors[type] = mirror
+      evictedClassCount >= maxLoadedClassCount
+    }
+
+    if (shouldRecreateGrip) {
+      recreateGrip()
+    }
+
+    return mirror
+  }
+
+  override fun getAnnotationMirror(type: Type.Object): AnnotationMirror {
+    return lock.read { grip.classRegistry.getAnnotationMirror(type) }
+  }
+
+  override fun findPathForType(type: Type.Object): Path? {
+    return lock.read { grip.fileRegistry.findPathForType(type) }
+  }
+
+  override fun close() {
+    lock.write {
+      grip.close()
+    }
+  }
+
+  private fun recreateGrip() {
+    lock.write {
+      val evictedCount = synchronized(classMirrors) { evictedClassCount.also { evictedClassCount = 0 } }
+      if (evictedCount >= maxLoadedClassCount) {
+        logger.debug("Dropping Grip caches after evicting {} classes", evictedCount)
+        grip.closeQuietly()
+        grip = gripFactory()
+      }
+    }
+  }
+
+  private companion object {
+    private const val INITIAL_CAPACITY = 1024
+    private const val LOAD_FACTOR = 0.75f
+  }
+}
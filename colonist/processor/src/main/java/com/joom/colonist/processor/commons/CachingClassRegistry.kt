@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.ColonistStatistics
+import com.joom.colonist.processor.index.ClassTable
+import com.joom.grip.mirrors.AnnotationMirror
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import java.nio.file.Path
+import kotlin.io.path.exists
+import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
+
+// Finds the jar of a class in class listings kept by the cache, so a cached mirror is returned without opening the classpath.
+// Directories and other classpath entries aren't cached, and the first classpath entry containing a class takes precedence.
+class CachingClassRegistry(
+  private val delegate: CloseableClassRegistry,
+  private val cache: ClassMirrorCache,
+  classpath: List<Path>,
+  archiveHashes: Map<Path, String>,
+  private val bootClassTable: ClassTable? = null,
+  private val bootArchiveHash: String? = null,
+  private val statistics: ColonistStatistics = ColonistStatistics(),
+) : CloseableClassRegistry {
+
+  private val session = cache.openSession(delegate)
+  private val classpath = archiveHashes.mapKeys { (path, _) -> path.toAbsolutePath().normalize() }.let { normalizedArchiveHashes ->
+    classpath.map { path ->
+      val normalizedPath = path.toAbsolutePath().normalize()
+      ClasspathEntry(normalizedPath, normalizedArchiveHashes[normalizedPath])
+    }
+  }
+
+  override fun getClassMirror(type: Type.Object): ClassMirror {
+    val archiveHash = findArchiveHash(type) ?: return delegate.getClassMirror(type)
+
+    var isMiss = false
+    val mirror = session.getOrPut(archiveHash, type) {
+      isMiss = true
+      delegate.getClassMirror(type)
+    }
+
+    val counter = if (isMiss) ColonistStatistics.Counter.CLASS_MIRROR_CACHE_MISSES else ColonistStatistics.Counter.CLASS_MIRROR_CACHE_HITS
+    statistics.increment(counter)
+    return mirror
+  }
+
+  override fun getAnnotationMirror(type: Type.Object): AnnotationMirror {
+    return delegate.getAnnotationMirror(type)
+  }
+
+  override fun findPathForType(type: Type.Object): Path? {
+    return delegate.findPathForType(type)
+  }
+
+  // The delegate is closed once no cached mirror loaded by it is left.
+  override fun close() {
+    session.close()
+  }
+
+  // Boot classes are found in their header snapshot, so a cached boot mirror doesn't open the boot classpath.
+  private fun findArchiveHash(type: Type.Object): String? {
+    if (bootArchiveHash != null && bootClassTable?.findClass(type) != null) {
+      return bootArchiveHash
+    }
+
+    val classFile = type.internalName + CLASS_EXTENSION
+    for (entry in classpath) {
+      when {
+        entry.archiveHash != null -> if (classFile in cache.getArchiveClasses(entry.archiveHash, entry.path)) return entry.archiveHash
+        entry.isDirectory -> if (entry.path.resolve(classFile).exists()) return null
+        entry.isFile -> return findArchiveHashInRegistry(type)
+      }
+    }
+
+    return null
+  }
+
+  // Grip decides how to read classpath entries that are neither jars nor directories.
+  private fun findArchiveHashInRegistry(type: Type.Object): String? {
+    val path = findPathForType(type)?.toAbsolutePath()?.normalize() ?: return null
+    return classpath.find { it.path == path }?.archiveHash
+  }
+
+  private class ClasspathEntry(
+    val path: Path,
+    val archiveHash: String?,
+  ) {
+    val isDirectory = archiveHash == null && path.isDirectory()
+    val isFile = archiveHash == null && path.isRegularFile()
+  }
+
+  private companion object {
+    private const val CLASS_EXTENSION = ".class"
+  }
+}
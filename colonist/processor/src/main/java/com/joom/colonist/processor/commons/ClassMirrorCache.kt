@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.io.ZipArchiveReader
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import java.io.Closeable
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+
+// Keeps class mirrors of jars between processor runs of a build. Mirrors are keyed by the content hash of their jar, so a changed jar
+// never gets stale mirrors, and the least recently used mirrors are evicted once the cache holds maxClassCount of them.
+// A mirror may still read from the registry that loaded it, so the registry is kept open while any of its mirrors is cached or used
+// by an open session, and it is closed once the last of them is gone.
+class ClassMirrorCache(val maxClassCount: Int) : Closeable {
+  private val mirrors = object : LinkedHashMap<MirrorKey, CachedMirror>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<MirrorKey, CachedMirror>): Boolean {
+      if (size <= maxClassCount) {
+        return false
+      }
+
+      eldest.value.registry.closeQuietly()
+      return true
+    }
+  }
+
+  private val archiveClasses = ConcurrentHashMap<String, Set<String>>()
+  private var isClosed = false
+
+  fun openSession(registry: Closeable): Session {
+    return Session(SharedRegistry(registry))
+  }
+
+  // Class file paths of a jar, so the jar of a class is found without indexing the whole classpath with Grip.
+  fun getArchiveClasses(archiveHash: String, path: Path): Set<String> {
+    archiveClasses[archiveHash]?.let { return it }
+
+    val classes = ZipArchiveReader(path).use { reader ->
+      reader.entries
+        .map { it.name }
+        .filter { it.endsWith(CLASS_EXTENSION) && !it.startsWith(VERSIONS_PREFIX) }
+        .toSet()
+    }
+
+    return archiveClasses.putIfAbsent(archiveHash, classes) ?: classes
+  }
+
+  override fun close() {
+    val registries = synchronized(mirrors) {
+      isClosed = true
+      mirrors.values.map { it.registry }.also { mirrors.clear() }
+    }
+
+    archiveClasses.clear()
+    registries.forEach { it.closeQuietly() }
+  }
+
+  override fun toString(): String {
+    return "ClassMirrorCache(maxClassCount=$maxClassCount)"
+  }
+
+  inner class Session internal constructor(private val registry: SharedRegistry) : Closeable {
+    private val registries = hashSetOf(registry)
+
+    fun getOrPut(archiveHash: String, type: Type.Object, loader: () -> ClassMirror): ClassMirror {
+      val key = MirrorKey(archiveHash, type)
+      findMirror(key)?.let { return it }
+
+      val mirror = loader()
+      putMirror(key, mirror)
+      return mirror
+    }
+
+    override fun close() {
+      val sessionRegistries = synchronized(registries) { registries.toList().also { registries.clear() } }
+      sessionRegistries.closeAll()
+    }
+
+    private fun findMirror(key: MirrorKey): ClassMirror? {
+      synchronized(mirrors) {
+        val cachedMirror = mirrors[key] ?: return null
+        synchronized(registries) {
+          if (registries.add(cachedMirror.registry)) {
+            cachedMirror.registry.retain()
+          }
+        }
+
+        return cachedMirror.mirror
+      }
+    }
+
+    private fun putMirror(key: MirrorKey, mirror: ClassMirror) {
+      synchronized(mirrors) {
+        if (isClosed) {
+          return
+        }
+
+        registry.retain()
+        mirrors.put(key, CachedMirror(mirror, registry))?.registry?.closeQuietly()
+      }
+    }
+  }
+
+  // Counts the session that opened the registry and the cached mirrors it loaded, closing the registry is deferred until
+  // every one of them is closed.
+  class SharedRegistry internal constructor(private val registry: Closeable) : Closeable {
+    private var referenceCount = 1
+
+    @Synchronized
+    internal fun retain() {
+      check(referenceCount > 0) { "Registry $registry is already closed" }
+      referenceCount += 1
+    }
+
+    override fun close() {
+      val shouldClose = synchronized(this) {
+        referenceCount -= 1
+        referenceCount == 0
+      }
+
+      if (shouldClose) {
+        registry.close()
+      }
+    }
+  }
+
+  private class CachedMirror(
+    val mirror: ClassMirror,
+    val registry: SharedRegistry,
+  )
+
+  private data class MirrorKey(
+    val archiveHash: String,
+    val type: Type.Object,
+  )
+
+  private companion object {
+    private const val INITIAL_CAPACITY = 1024
+    private const val LOAD_FACTOR = 0.75f
+    private const val CLASS_EXTENSION = ".class"
+    private const val VERSIONS_PREFIX = "META-INF/versions/"
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.grip.ClassRegistry
+import com.joom.grip.Grip
+import com.joom.grip.mirrors.Type
+import java.io.Closeable
+import java.nio.file.Path
+
+interface CloseableClassRegistry : ClassRegistry, Closeable {
+  fun findPathForType(type: Type.Object): Path?
+}
+
+class GripClassRegistry(private val grip: Grip) : CloseableClassRegistry, ClassRegistry by grip.classRegistry {
+  override fun findPathForType(type: Type.Object): Path? {
+    return grip.fileRegistry.findPathForType(type)
+  }
+
+  override fun close() {
+    grip.close()
+  }
+}
@@ -26,3 +26,16 @@ fun Closeable.closeQuietly() {
     // Ignore the exception.
   }
 }
+
+fun Iterable<Closeable>.closeAll() {
+  var failure: Throwable? = null
+  forEach { closeable ->
+    try {
+      closeable.close()
+    } catch (exception: Throwable) {
+      failure?.addSuppressed(exception) ?: run { failure = exception }
+    }
+  }
+
+  failure?.let { throw it }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.index.ClassHeaderResolver
+import com.joom.colonist.processor.logging.getLogger
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.util.concurrent.ConcurrentHashMap
+
+class CommonSuperClassResolver(private val classHeaderResolver: ClassHeaderResolver) {
+  private val logger = getLogger()
+  private val hierarchies = ConcurrentHashMap<String, Set<String>>()
+  private val commonSuperClasses = ConcurrentHashMap<TypePair, String>()
+
+  fun getCommonSuperClass(type1: String, type2: String): String {
+    val key = if (type1 <= type2) TypePair(type1, type2) else TypePair(type2, type1)
+    return commonSuperClasses.getOrPut(key) {
+      computeCommonSuperClass(key.type1, key.type2)
+    }
+  }
+
+  private fun computeCommonSuperClass(type1: String, type2: String): String {
+    val hierarchy = getClassHierarchy(type1)
+    for (type in getClassHierarchy(type2)) {
+      if (type in hierarchy) {
+        logger.debug("[getCommonSuperClass]: {} & {} = {}", type1, type2, type)
+        return type
+      }
+    }
+
+    logger.warn("[getCommonSuperClass]: {} & {} = NOT FOUND ", type1, type2)
+    return Types.OBJECT_TYPE.internalName
+  }
+
+  private fun getClassHierarchy(type: String): Set<String> {
+    return hierarchies.getOrPut(type) {
+      val headers = generateSequence(classHeaderResolver.resolveClassHeader(getObjectTypeByInternalName(type))) { header ->
+        header.superType?.let { classHeaderResolver.resolveClassHeader(it) }
+      }
+
+      headers.mapTo(LinkedHashSet()) { it.type.internalName }
+    }
+  }
+
+  private data class TypePair(
+    val type1: String,
+    val type2: String,
+  )
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.security.MessageDigest
+
+private const val BUFFER_SIZE = 64 * 1024
+
+fun Path.computeContentHash(): String {
+  val digest = MessageDigest.getInstance("SHA-256")
+  Files.newInputStream(this).use { input ->
+    val buffer = ByteArray(BUFFER_SIZE)
+    while (true) {
+      val count = input.read(buffer)
+      if (count < 0) {
+        break
+      }
+      digest.update(buffer, 0, count)
+    }
+  }
+
+  return digest.digest().toHexString()
+}
+
+fun ByteArray.computeContentHash(): String {
+  return MessageDigest.getInstance("SHA-256").digest(this).toHexString()
+}
+
+private fun ByteArray.toHexString(): String {
+  return joinToString(separator = "") { "%02x".format(it) }
+}
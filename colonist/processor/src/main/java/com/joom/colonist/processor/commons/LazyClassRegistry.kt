@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.grip.mirrors.AnnotationMirror
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import java.nio.file.Path
+
+// Creates the registry on first use, so a run served by cached mirrors never indexes the classpath.
+class LazyClassRegistry(classRegistryFactory: () -> CloseableClassRegistry) : CloseableClassRegistry {
+  private val classRegistry = lazy(classRegistryFactory)
+
+  override fun getClassMirror(type: Type.Object): ClassMirror {
+    return classRegistry.value.getClassMirror(type)
+  }
+
+  override fun getAnnotationMirror(type: Type.Object): AnnotationMirror {
+    return classRegistry.value.getAnnotationMirror(type)
+  }
+
+  override fun findPathForType(type: Type.Object): Path? {
+    return classRegistry.value.findPathForType(type)
+  }
+
+  override fun close() {
+    if (classRegistry.isInitialized()) {
+      classRegistry.value.close()
+    }
+  }
+}
@@ -16,46 +16,21 @@
 
 package com.joom.colonist.processor.commons
 
-import com.joom.colonist.processor.logging.getLogger
-import com.joom.grip.ClassRegistry
-import com.joom.grip.mirrors.ClassMirror
-import com.joom.grip.mirrors.Type
-import com.joom.grip.mirrors.getObjectTypeByInternalName
 import org.objectweb.asm.ClassReader
 import org.objectweb.asm.ClassWriter
 
 class StandaloneClassWriter : ClassWriter {
-  private val logger = getLogger()
-  private val classRegistry: ClassRegistry
+  private val commonSuperClassResolver: CommonSuperClassResolver
 
-  constructor(flags: Int, classRegistry: ClassRegistry) : super(flags) {
-    this.classRegistry = classRegistry
+  constructor(flags: Int, commonSuperClassResolver: CommonSuperClassResolver) : super(flags) {
+    this.commonSuperClassResolver = commonSuperClassResolver
   }
 
-  constructor(classReader: ClassReader, flags: Int, classRegistry: ClassRegistry) : super(classReader, flags) {
-    this.classRegistry = classRegistry
+  constructor(classReader: ClassReader, flags: Int, commonSuperClassResolver: CommonSuperClassResolver) : super(classReader, flags) {
+    this.commonSuperClassResolver = commonSuperClassResolver
   }
 
   override fun getCommonSuperClass(type1: String, type2: String): String {
-    val hierarchy = HashSet<Type>()
-    for (mirror in classRegistry.findClassHierarchy(getObjectTypeByInternalName(type1))) {
-      hierarchy.add(mirror.type)
-    }
-
-    for (mirror in classRegistry.findClassHierarchy(getObjectTypeByInternalName(type2))) {
-      if (mirror.type in hierarchy) {
-        logger.debug("[getCommonSuperClass]: {} & {} = {}", type1, type2, mirror.access)
-        return mirror.type.internalName
-      }
-    }
-
-    logger.warn("[getCommonSuperClass]: {} & {} = NOT FOUND ", type1, type2)
-    return Types.OBJECT_TYPE.internalName
-  }
-
-  private fun ClassRegistry.findClassHierarchy(type: Type.Object): Sequence<ClassMirror> {
-    return generateSequence(getClassMirror(type)) {
-      it.superType?.let { getClassMirror(it) }
-    }
+    return commonSuperClassResolver.getCommonSuperClass(type1, type2)
   }
 }
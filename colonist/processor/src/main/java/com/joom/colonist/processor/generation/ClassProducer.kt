@@ -34,7 +34,7 @@ class ClassProducer(
     try {
       fileSink.createFile(classFileName, classData)
     } catch (exception: IOException) {
-      errorReporter.reportError("Failed to produce class with ${classData.size} bytes: $classFileName", exception)
+      errorReporter.reportFatalError("Failed to produce class with ${classData.size} bytes: $classFileName", exception)
     }
   }
 }
@@ -16,6 +16,7 @@
 
 package com.joom.colonist.processor.generation
 
+import com.joom.colonist.processor.commons.CommonSuperClassResolver
 import com.joom.colonist.processor.commons.GeneratorAdapter
 import com.joom.colonist.processor.commons.StandaloneClassWriter
 import com.joom.colonist.processor.commons.Types
@@ -29,17 +30,16 @@ import com.joom.colonist.processor.model.Settler
 import com.joom.colonist.processor.model.SettlerAcceptor
 import com.joom.colonist.processor.model.SettlerProducer
 import com.joom.colonist.processor.watermark.WatermarkClassVisitor
-import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.Type
 import com.joom.grip.mirrors.isStatic
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.ClassWriter
 import org.objectweb.asm.Opcodes
 
-class ColonyDelegateGenerator(private val classRegistry: ClassRegistry) {
+class ColonyDelegateGenerator(private val commonSuperClassResolver: CommonSuperClassResolver) {
 
   fun generate(colony: Colony, settlers: Collection<Settler>): ByteArray {
-    val classWriter = StandaloneClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, classRegistry)
+    val classWriter = StandaloneClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, commonSuperClassResolver)
     val classVisitor = WatermarkClassVisitor(classWriter, true)
     classVisitor.visit(
       Opcodes.V1_6,
@@ -58,7 +58,7 @@ class ColonyDelegateGenerator(private val classRegistry: ClassRegistry) {
 
   private fun generateColonyFoundMethod(classVisitor: ClassVisitor, colony: Colony, settlers: Collection<Settler>) {
     classVisitor.newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, MethodDescriptor.forMethod("found", Type.Primitive.Void, colony.type)) {
-      for (settler in settlers) {
+      for (settler in settlers.sortedBy { it.type.internalName }) {
         produceSettler(colony, settler)
         acceptSettler(colony, settler)
       }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.colonist.processor.ColonistStatistics
+import com.joom.colonist.processor.commons.ArchiveHasher
+import com.joom.colonist.processor.logging.getLogger
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import kotlin.io.path.isRegularFile
+
+class CachingClassIndexProvider(
+  private val cacheDirectory: Path,
+  private val delegate: ClassIndexProvider,
+  private val statistics: ColonistStatistics = ColonistStatistics(),
+  private val archiveHasher: ArchiveHasher = ArchiveHasher(),
+) : ClassIndexProvider {
+
+  private val logger = getLogger()
+
+  override fun getClassIndex(path: Path): ClassIndex {
+    val archiveHash = archiveHasher.getArchiveHash(path) ?: return delegate.getClassIndex(path)
+    val indexFile = cacheDirectory.resolve(archiveHash + INDEX_EXTENSION)
+    readClassIndex(indexFile)?.let { classIndex ->
+      logger.debug("Loaded class index for {} from {}", path, indexFile)
+      statistics.increment(ColonistStatistics.Counter.CLASS_INDEX_CACHE_HITS)
+      return classIndex
+    }
+
+    statistics.increment(ColonistStatistics.Counter.CLASS_INDEX_CACHE_MISSES)
+    val classIndex = delegate.getClassIndex(path)
+    writeClassIndex(classIndex, indexFile)
+    return classIndex
+  }
+
+  private fun readClassIndex(indexFile: Path): ClassIndex? {
+    if (!indexFile.isRegularFile()) {
+      return null
+    }
+
+    return try {
+      ClassIndexSerializer.read(indexFile)
+    } catch (exception: IOException) {
+      logger.warn("Failed to read class index {}", indexFile, exception)
+      null
+    } catch (exception: RuntimeException) {
+      logger.warn("Class index {} is corrupted", indexFile, exception)
+      null
+    }
+  }
+
+  private fun writeClassIndex(classIndex: ClassIndex, indexFile: Path) {
+    var temporaryFile: Path? = null
+    try {
+      Files.createDirectories(cacheDirectory)
+      temporaryFile = Files.createTempFile(cacheDirectory, indexFile.fileName.toString(), TEMPORARY_EXTENSION)
+      ClassIndexSerializer.write(classIndex, temporaryFile)
+      moveAtomically(temporaryFile, indexFile)
+    } catch (exception: IOException) {
+      logger.warn("Failed to write class index {}", indexFile, exception)
+    } finally {
+      temporaryFile?.let { Files.deleteIfExists(it) }
+    }
+  }
+
+  private fun moveAtomically(source: Path, target: Path) {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE)
+    } catch (exception: AtomicMoveNotSupportedException) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING)
+    }
+  }
+
+  private companion object {
+    private const val INDEX_EXTENSION = ".idx"
+    private const val TEMPORARY_EXTENSION = ".tmp"
+  }
+}
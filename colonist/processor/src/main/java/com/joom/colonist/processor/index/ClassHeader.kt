@@ -0,0 +1,36 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.colonist.processor.commons.contains
+import com.joom.grip.mirrors.Type
+import org.objectweb.asm.Opcodes
+
+data class ClassHeader(
+  val type: Type.Object,
+  val access: Int,
+  val superType: Type.Object?,
+  val interfaces: List<Type.Object>,
+  val annotations: List<Type.Object>,
+) {
+
+  val isPublic: Boolean
+    get() = Opcodes.ACC_PUBLIC in access
+
+  val isInterface: Boolean
+    get() = Opcodes.ACC_INTERFACE in access
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectType
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import org.objectweb.asm.AnnotationVisitor
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Opcodes
+
+class ClassHeaderReader : ClassVisitor(Opcodes.ASM9) {
+  private var type: Type.Object? = null
+  private var access: Int = 0
+  private var superType: Type.Object? = null
+  private var interfaces: List<Type.Object> = emptyList()
+  private val annotations = ArrayList<Type.Object>()
+
+  override fun visit(
+    version: Int,
+    access: Int,
+    name: String,
+    signature: String?,
+    superName: String?,
+    interfaces: Array<String>?
+  ) {
+    this.type = getObjectTypeByInternalName(name)
+    this.access = access
+    this.superType = superName?.let { getObjectTypeByInternalName(it) }
+    this.interfaces = interfaces?.map { getObjectTypeByInternalName(it) }.orEmpty()
+    this.annotations.clear()
+  }
+
+  override fun visitAnnotation(descriptor: String, visible: Boolean): AnnotationVisitor? {
+    annotations += getObjectType(descriptor)
+    return null
+  }
+
+  fun toClassHeader(): ClassHeader {
+    val type = checkNotNull(type) { "Class header hasn't been read yet" }
+    return ClassHeader(type, access, superType, interfaces, annotations.toList())
+  }
+
+  companion object {
+    private const val FLAGS = ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
+
+    fun read(classData: ByteArray): ClassHeader {
+      val reader = ClassHeaderReader()
+      ClassReader(classData).accept(reader, FLAGS)
+      return reader.toClassHeader()
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.grip.mirrors.Type
+import java.util.BitSet
+
+class ClassHierarchy private constructor(
+  private val headers: Array<ClassHeader?>,
+  private val idsByType: Map<Type.Object, Int>,
+  private val tableSize: Int,
+  private val subclasses: Adjacency,
+  private val implementations: Adjacency,
+) {
+
+  fun findSubtypes(baseType: Type.Object): List<ClassHeader> {
+    val baseId = idsByType[baseType] ?: return emptyList()
+    val includeImplementations = headers[baseId]?.isInterface != false
+    val visited = BitSet()
+    val queue = IntArrayQueue()
+    visit(baseId, visited, queue)
+
+    while (queue.isNotEmpty()) {
+      val id = queue.remove()
+      subclasses.forEach(id) { visit(it, visited, queue) }
+      if (includeImplementations) {
+        implementations.forEach(id) { visit(it, visited, queue) }
+      }
+    }
+
+    val subtypes = ArrayList<ClassHeader>()
+    var id = visited.nextSetBit(0)
+    while (id in 0 until tableSize) {
+      headers[id]?.let { subtypes += it }
+      id = visited.nextSetBit(id + 1)
+    }
+
+    return subtypes
+  }
+
+  private fun visit(id: Int, visited: BitSet, queue: IntArrayQueue) {
+    if (!visited[id]) {
+      visited.set(id)
+      queue.add(id)
+    }
+  }
+
+  private class Adjacency(
+    private val offsets: IntArray,
+    private val targets: IntArray,
+  ) {
+
+    inline fun forEach(id: Int, action: (Int) -> Unit) {
+      for (index in offsets[id] until offsets[id + 1]) {
+        action(targets[index])
+      }
+    }
+
+    companion object {
+      fun invert(size: Int, edges: (Int, (Int) -> Unit) -> Unit): Adjacency {
+        val offsets = IntArray(size + 1)
+        for (id in 0 until size) {
+          edges(id) { parent -> offsets[parent + 1] += 1 }
+        }
+        for (id in 0 until size) {
+          offsets[id + 1] += offsets[id]
+        }
+
+        val targets = IntArray(offsets[size])
+        val positions = offsets.copyOf(size)
+        for (id in 0 until size) {
+          edges(id) { parent -> targets[positions[parent]++] = id }
+        }
+
+        return Adjacency(offsets, targets)
+      }
+    }
+  }
+
+  private class IntArrayQueue {
+    private var elements = IntArray(16)
+    private var head = 0
+    private var tail = 0
+
+    fun isNotEmpty(): Boolean = head < tail
+
+    fun add(element: Int) {
+      if (tail == elements.size) {
+        elements = elements.copyOf(elements.size * 2)
+      }
+      elements[tail++] = element
+    }
+
+    fun remove(): Int = elements[head++]
+  }
+
+  companion object {
+    fun build(classTable: ClassTable, resolveClassHeader: (Type.Object) -> ClassHeader?): ClassHierarchy {
+      val types = ArrayList<Type.Object>()
+      val headers = ArrayList<ClassHeader?>()
+      val idsByType = HashMap<Type.Object, Int>()
+      fun idOf(type: Type.Object): Int {
+        return idsByType.getOrPut(type) {
+          types += type
+          headers += null
+          types.size - 1
+        }
+      }
+
+      for (header in classTable.classes) {
+        headers[idOf(header.type)] = header
+      }
+
+      val tableSize = headers.size
+      val superTypeIds = ArrayList<Int>()
+      val interfaceIds = ArrayList<IntArray>()
+      var id = 0
+      while (id < headers.size) {
+        val header = headers[id] ?: resolveClassHeader(types[id]).also { headers[id] = it }
+        superTypeIds += header?.superType?.let { idOf(it) } ?: NO_ID
+        interfaceIds += header?.interfaces?.map { idOf(it) }?.toIntArray() ?: EMPTY_IDS
+        id += 1
+      }
+
+      val size = headers.size
+      val subclasses = Adjacency.invert(size) { child, action ->
+        val parent = superTypeIds[child]
+        if (parent != NO_ID) {
+          action(parent)
+        }
+      }
+      val implementations = Adjacency.invert(size) { child, action ->
+        interfaceIds[child].forEach(action)
+      }
+
+      return ClassHierarchy(headers.toTypedArray(), idsByType, tableSize, subclasses, implementations)
+    }
+
+    private const val NO_ID = -1
+    private val EMPTY_IDS = IntArray(0)
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+// magic, version, string table, then every class as name, access, super name, interfaces and annotations,
+// where each name is an index in the string table.
+object ClassIndexSerializer {
+  private const val MAGIC = 0x434c4e58
+  private const val VERSION = 1
+  private const val NO_NAME = -1
+
+  fun write(classIndex: ClassIndex, path: Path) {
+    Files.newOutputStream(path).use { write(classIndex, it) }
+  }
+
+  fun toByteArray(classIndex: ClassIndex): ByteArray {
+    val output = ByteArrayOutputStream()
+    write(classIndex, output)
+    return output.toByteArray()
+  }
+
+  private fun write(classIndex: ClassIndex, stream: OutputStream) {
+    val strings = LinkedHashMap<String, Int>()
+    fun indexOf(type: Type.Object): Int = strings.getOrPut(type.internalName) { strings.size }
+
+    val records = classIndex.classes.map { header ->
+      IntArray(3 + 2 + header.interfaces.size + header.annotations.size).also { record ->
+        var position = 0
+        record[position++] = indexOf(header.type)
+        record[position++] = header.access
+        record[position++] = header.superType?.let { indexOf(it) } ?: NO_NAME
+        record[position++] = header.interfaces.size
+        header.interfaces.forEach { record[position++] = indexOf(it) }
+        record[position++] = header.annotations.size
+        header.annotations.forEach { record[position++] = indexOf(it) }
+      }
+    }
+
+    DataOutputStream(BufferedOutputStream(stream)).use { output ->
+      output.writeInt(MAGIC)
+      output.writeInt(VERSION)
+      output.writeInt(strings.size)
+      strings.keys.forEach { string ->
+        val bytes = string.toByteArray(Charsets.UTF_8)
+        output.writeInt(bytes.size)
+        output.write(bytes)
+      }
+
+      output.writeInt(records.size)
+      records.forEach { record ->
+        record.forEach { output.writeInt(it) }
+      }
+    }
+  }
+
+  fun read(path: Path): ClassIndex? {
+    return FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+      read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+    }
+  }
+
+  fun read(data: ByteArray): ClassIndex? {
+    return read(ByteBuffer.wrap(data))
+  }
+
+  private fun read(buffer: ByteBuffer): ClassIndex? {
+    if (buffer.remaining() < 8 || buffer.int != MAGIC || buffer.int != VERSION) {
+      return null
+    }
+
+    val types = Array(buffer.int) { getObjectTypeByInternalName(buffer.readString()) }
+    val classes = List(buffer.int) {
+      val type = types[buffer.int]
+      val access = buffer.int
+      val superType = buffer.int.let { if (it == NO_NAME) null else types[it] }
+      val interfaces = List(buffer.int) { types[buffer.int] }
+      val annotations = List(buffer.int) { types[buffer.int] }
+      ClassHeader(type, access, superType, interfaces, annotations)
+    }
+
+    return ClassIndex(classes)
+  }
+
+  private fun ByteBuffer.readString(): String {
+    val bytes = ByteArray(int)
+    get(bytes)
+    return String(bytes, Charsets.UTF_8)
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.grip.mirrors.Type
+
+class ClassTable private constructor(
+  private val headersByType: Map<Type.Object, ClassHeader>
+) {
+
+  val classes: Collection<ClassHeader>
+    get() = headersByType.values
+
+  fun findClass(type: Type.Object): ClassHeader? {
+    return headersByType[type]
+  }
+
+  companion object {
+    fun build(classIndices: List<ClassIndex>): ClassTable {
+      val headersByType = LinkedHashMap<Type.Object, ClassHeader>()
+      for (classIndex in classIndices) {
+        for (header in classIndex.classes) {
+          headersByType.putIfAbsent(header.type, header)
+        }
+      }
+
+      return ClassTable(headersByType)
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.colonist.processor.ColonistStatistics
+import com.joom.colonist.processor.io.ZipArchiveReader
+import com.joom.colonist.processor.logging.getLogger
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.stream.Collectors
+import kotlin.io.path.extension
+import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.name
+
+// Uses the class index that colonist writes into library outputs, so the library classes don't have to be scanned.
+class PrecomputedClassIndexProvider(
+  private val delegate: ClassIndexProvider,
+  private val statistics: ColonistStatistics = ColonistStatistics(),
+) : ClassIndexProvider {
+
+  private val logger = getLogger()
+
+  override fun getClassIndex(path: Path): ClassIndex {
+    readPrecomputedClassIndex(path)?.let { classIndex ->
+      logger.debug("Loaded precomputed class index from {}", path)
+      statistics.increment(ColonistStatistics.Counter.PRECOMPUTED_CLASS_INDEX_HITS)
+      return classIndex
+    }
+
+    return delegate.getClassIndex(path)
+  }
+
+  private fun readPrecomputedClassIndex(path: Path): ClassIndex? {
+    return try {
+      when {
+        path.isDirectory() -> readFromDirectory(path)
+        path.isRegularFile() && path.extension.endsWith("jar", ignoreCase = true) -> readFromJar(path)
+        else -> null
+      }
+    } catch (exception: IOException) {
+      logger.warn("Failed to read precomputed class index from {}", path, exception)
+      null
+    } catch (exception: RuntimeException) {
+      logger.warn("Precomputed class index in {} is corrupted", path, exception)
+      null
+    }
+  }
+
+  private fun readFromDirectory(directory: Path): ClassIndex? {
+    val indexDirectory = directory.resolve(CLASS_INDEX_DIRECTORY)
+    if (!indexDirectory.isDirectory()) {
+      return null
+    }
+
+    val indexFiles = indexDirectory.listDirectoryEntries().filter { isClassIndexPath("$CLASS_INDEX_DIRECTORY/${it.name}") }
+    if (indexFiles.isEmpty()) {
+      return null
+    }
+
+    val classIndices = indexFiles.sorted().map { ClassIndexSerializer.read(it) ?: return null }
+    val classPaths = Files.walk(directory).use { paths ->
+      paths
+        .filter { it.isRegularFile() }
+        .map { directory.relativize(it).joinToString("/") }
+        .filter { isIndexedClassPath(it) }
+        .collect(Collectors.toSet())
+    }
+
+    return mergeClassIndices(directory, classIndices, classPaths)
+  }
+
+  private fun readFromJar(jar: Path): ClassIndex? {
+    return ZipArchiveReader(jar).use { reader ->
+      val indexEntries = reader.entries.filter { isClassIndexPath(it.name) }
+      if (indexEntries.isEmpty()) {
+        return null
+      }
+
+      val classIndices = indexEntries.sortedBy { it.name }.map { ClassIndexSerializer.read(reader.readData(it)) ?: return null }
+      val classPaths = reader.entries.mapNotNullTo(HashSet()) { entry -> entry.name.takeIf { isIndexedClassPath(it) } }
+      mergeClassIndices(jar, classIndices, classPaths)
+    }
+  }
+
+  // The output may have been recompiled or repackaged after colonist wrote the index, so the index is used only when it lists
+  // the same classes. A jar merged from several libraries carries an index of each of them.
+  private fun mergeClassIndices(path: Path, classIndices: List<ClassIndex>, classPaths: Set<String>): ClassIndex? {
+    val classes = classIndices.flatMap { it.classes }
+    val indexedClassPaths = classes.mapTo(HashSet()) { it.type.internalName + CLASS_EXTENSION }
+    if (indexedClassPaths.size != classes.size || indexedClassPaths != classPaths) {
+      logger.info("Precomputed class index in {} doesn't match its classes", path)
+      return null
+    }
+
+    return classIndices.singleOrNull() ?: ClassIndex(classes.sortedBy { it.type.internalName })
+  }
+
+  private fun isIndexedClassPath(path: String): Boolean {
+    return path.endsWith(CLASS_EXTENSION) && !path.startsWith(VERSIONS_PREFIX)
+  }
+
+  companion object {
+    // Every library names its index after the index content, so indices of different libraries don't collide when they are merged.
+    const val CLASS_INDEX_DIRECTORY = "META-INF/colonist"
+
+    private const val CLASS_INDEX_PREFIX = "$CLASS_INDEX_DIRECTORY/class-index-"
+    private const val CLASS_INDEX_EXTENSION = ".idx"
+
+    private const val CLASS_EXTENSION = ".class"
+    private const val VERSIONS_PREFIX = "META-INF/versions/"
+
+    fun getClassIndexPath(contentHash: String): String {
+      return CLASS_INDEX_PREFIX + contentHash + CLASS_INDEX_EXTENSION
+    }
+
+    fun isClassIndexPath(path: String): Boolean {
+      return path.startsWith(CLASS_INDEX_PREFIX) && path.endsWith(CLASS_INDEX_EXTENSION) && path.indexOf('/', CLASS_INDEX_PREFIX.length) < 0
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.colonist.processor.logging.getLogger
+import com.joom.grip.io.FileSource
+import com.joom.grip.io.IoFactory
+import java.nio.file.Path
+
+object ScanningClassIndexProvider : ClassIndexProvider {
+  private val logger = getLogger()
+
+  override fun getClassIndex(path: Path): ClassIndex {
+    logger.debug("Scanning class headers in {}", path)
+    val classes = ArrayList<ClassHeader>()
+    IoFactory.createFileSource(path).use { fileSource ->
+      fileSource.listFiles { name, type ->
+        if (type == FileSource.EntryType.CLASS) {
+          classes += ClassHeaderReader.read(fileSource.readFile(name))
+        }
+      }
+    }
+
+    return ClassIndex(classes)
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import com.joom.grip.io.FileSink
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import kotlin.io.path.exists
+
+internal class DirectoryFileSink(private val directory: Path) : FileSink, LocalFileSink {
+
+  override fun createFile(path: String, data: ByteArray) {
+    val file = directory.resolve(path)
+    file.parent?.let { Files.createDirectories(it) }
+    // The old file is unlinked rather than truncated, so hard links to it, e.g. class backups, keep their content.
+    Files.deleteIfExists(file)
+    Files.write(file, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+  }
+
+  override fun copyLocalFile(fileSource: DirectoryFileSource, path: String): Int {
+    val source = fileSource.resolve(path)
+    val file = directory.resolve(path)
+    // In-place processing reads from hard-linked backups, so an unmodified file is left alone to keep the link.
+    if (file.exists() && Files.isSameFile(source, file)) {
+      return 0
+    }
+
+    val data = Files.readAllBytes(source)
+    createFile(path, data)
+    return data.size
+  }
+
+  override fun createDirectory(path: String) {
+    Files.createDirectories(directory.resolve(path))
+  }
+
+  override fun flush() = Unit
+
+  override fun close() = Unit
+
+  override fun toString(): String {
+    return "DirectoryFileSink($directory)"
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import com.joom.grip.io.FileSource
+import java.nio.file.Path
+
+class DirectoryFileSource(private val directory: Path, private val delegate: FileSource) : FileSource by delegate {
+  fun resolve(path: String): Path {
+    return directory.resolve(path)
+  }
+
+  override fun toString(): String {
+    return "DirectoryFileSource($directory)"
+  }
+}
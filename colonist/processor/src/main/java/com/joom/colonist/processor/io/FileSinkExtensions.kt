@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import com.joom.grip.io.FileSink
+import com.joom.grip.io.FileSource
+
+fun FileSink.copyFile(fileSource: FileSource, path: String): Int {
+  return when {
+    this is RawFileSink && fileSource is ZipFileSource -> copyRawFile(fileSource, path)
+    this is LocalFileSink && fileSource is DirectoryFileSource -> copyLocalFile(fileSource, path)
+    else -> {
+      val data = fileSource.readFile(path)
+      createFile(path, data)
+      data.size
+    }
+  }
+}
+
+fun FileSink.createSegment(): FileSegment {
+  return if (this is SegmentedFileSink) createSegment() else DirectFileSegment(this)
+}
+
+private class DirectFileSegment(private val delegate: FileSink) : FileSegment, LocalFileSink {
+  override fun createFile(path: String, data: ByteArray) {
+    delegate.createFile(path, data)
+  }
+
+  override fun createDirectory(path: String) {
+    delegate.createDirectory(path)
+  }
+
+  override fun copyRawFile(fileSource: ZipFileSource, path: String): Int {
+    val data = fileSource.readFile(path)
+    delegate.createFile(path, data)
+    return data.size
+  }
+
+  override fun copyLocalFile(fileSource: DirectoryFileSource, path: String): Int {
+    return delegate.copyFile(fileSource, path)
+  }
+
+  override fun commit() = Unit
+
+  override fun flush() = Unit
+
+  override fun close() = Unit
+}
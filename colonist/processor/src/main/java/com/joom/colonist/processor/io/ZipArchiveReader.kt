@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import java.io.Closeable
+import java.io.EOFException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.zip.Inflater
+import java.util.zip.ZipException
+
+class ZipArchiveReader(private val path: Path) : Closeable {
+  private val channel = FileChannel.open(path, StandardOpenOption.READ)
+
+  val entries: List<ZipArchiveEntry> = try {
+    readCentralDirectory()
+  } catch (exception: Throwable) {
+    channel.close()
+    throw exception
+  }
+
+  fun readRawData(entry: ZipArchiveEntry): ByteArray {
+    val header = read(entry.localHeaderOffset, ZipFormat.LOCAL_HEADER_SIZE)
+    if (header.getInt(0) != ZipFormat.LOCAL_HEADER_SIGNATURE) {
+      throw ZipException("Invalid local header of ${entry.name} in $path")
+    }
+
+    val dataOffset = entry.localHeaderOffset + ZipFormat.LOCAL_HEADER_SIZE + header.getUInt16(26) + header.getUInt16(28)
+    return read(dataOffset, entry.compressedSize.toIntSize()).array()
+  }
+
+  fun readData(entry: ZipArchiveEntry): ByteArray {
+    val rawData = readRawData(entry)
+    return when (entry.method) {
+      ZipFormat.METHOD_STORED -> rawData
+      ZipFormat.METHOD_DEFLATED -> inflate(entry, rawData)
+      else -> throw ZipException("Unsupported compression method ${entry.method} of ${entry.name} in $path")
+    }
+  }
+
+  override fun close() {
+    channel.close()
+  }
+
+  private fun inflate(entry: ZipArchiveEntry, rawData: ByteArray): ByteArray {
+    val data = ByteArray(entry.size.toIntSize())
+    val inflater = Inflater(true)
+    try {
+      inflater.setInput(rawData)
+      var length = 0
+      while (length < data.size) {
+        val count = inflater.inflate(data, length, data.size - length)
+        if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          break
+        }
+        length += count
+      }
+
+      if (length != data.size) {
+        throw ZipException("Unexpected size of ${entry.name} in $path")
+      }
+    } finally {
+      inflater.end()
+    }
+
+    return data
+  }
+
+  private fun readCentralDirectory(): List<ZipArchiveEntry> {
+    val fileSize = channel.size()
+    val tailSize = minOf(fileSize, (ZipFormat.END_OF_CENTRAL_DIRECTORY_SIZE + ZipFormat.MAX_COMMENT_SIZE).toLong()).toInt()
+    val tailOffset = fileSize - tailSize
+    val tail = read(tailOffset, tailSize)
+    val endPosition = findEndOfCentralDirectory(tail)
+
+    var entryCount = tail.getUInt16(endPosition + 10).toLong()
+    var centralDirectorySize = tail.getUInt32(endPosition + 12)
+    var centralDirectoryOffset = tail.getUInt32(endPosition + 16)
+
+    val locatorPosition = endPosition - ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE
+    if (locatorPosition >= 0 && tail.getInt(locatorPosition) == ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+      val zip64End = read(tail.getLong(locatorPosition + 8), ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE)
+      if (zip64End.getInt(0) != ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        throw ZipException("Invalid zip64 end of central directory in $path")
+      }
+
+      entryCount = zip64End.getLong(32)
+      centralDirectorySize = zip64End.getLong(40)
+      centralDirectoryOffset = zip64End.getLong(48)
+    }
+
+    val centralDirectory = read(centralDirectoryOffset, centralDirectorySize.toIntSize())
+    val entries = ArrayList<ZipArchiveEntry>(entryCount.toIntSize())
+    var position = 0
+    repeat(entryCount.toIntSize()) {
+      if (centralDirectory.getInt(position) != ZipFormat.CENTRAL_HEADER_SIGNATURE) {
+        throw ZipException("Invalid central directory header in $path")
+      }
+
+      val nameLength = centralDirectory.getUInt16(position + 28)
+      val extraLength = centralDirectory.getUInt16(position + 30)
+      val commentLength = centralDirectory.getUInt16(position + 32)
+      val nameOffset = position + ZipFormat.CENTRAL_HEADER_SIZE
+      val name = String(centralDirectory.array(), nameOffset, nameLength, Charsets.UTF_8)
+
+      var compressedSize = centralDirectory.getUInt32(position + 20)
+      var size = centralDirectory.getUInt32(position + 24)
+      var localHeaderOffset = centralDirectory.getUInt32(position + 42)
+      var extraPosition = nameOffset + nameLength
+      val extraEnd = extraPosition + extraLength
+      while (extraPosition + 4 <= extraEnd) {
+        val id = centralDirectory.getUInt16(extraPosition)
+        val length = centralDirectory.getUInt16(extraPosition + 2)
+        if (id == ZipFormat.ZIP64_EXTRA_FIELD_ID) {
+          var valuePosition = extraPosition + 4
+          if (size == ZipFormat.MAX_UINT32) {
+            size = centralDirectory.getLong(valuePosition)
+            valuePosition += 8
+          }
+          if (compressedSize == ZipFormat.MAX_UINT32) {
+            compressedSize = centralDirectory.getLong(valuePosition)
+            valuePosition += 8
+          }
+          if (localHeaderOffset == ZipFormat.MAX_UINT32) {
+            localHeaderOffset = centralDirectory.getLong(valuePosition)
+          }
+        }
+        extraPosition += 4 + length
+      }
+
+      entries += ZipArchiveEntry(
+        name = name,
+        method = centralDirectory.getUInt16(position + 10),
+        time = centralDirectory.getUInt16(position + 12),
+        date = centralDirectory.getUInt16(position + 14),
+        crc = centralDirectory.getInt(position + 16),
+        compressedSize = compressedSize,
+        size = size,
+        localHeaderOffset = localHeaderOffset,
+      )
+
+      position = extraEnd + commentLength
+    }
+
+    return entries
+  }
+
+  private fun findEndOfCentralDirectory(tail: ByteBuffer): Int {
+    for (position in tail.limit() - ZipFormat.END_OF_CENTRAL_DIRECTORY_SIZE downTo 0) {
+      if (tail.getInt(position) == ZipFormat.END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return position
+      }
+    }
+
+    throw ZipException("End of central directory is not found in $path")
+  }
+
+  private fun read(offset: Long, size: Int): ByteBuffer {
+    val buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw EOFException("Unexpected end of $path")
+      }
+    }
+
+    return buffer.clear()
+  }
+
+  private fun Long.toIntSize(): Int {
+    if (this < 0 || this > Int.MAX_VALUE) {
+      throw ZipException("Size $this is not supported in $path")
+    }
+
+    return toInt()
+  }
+
+  private fun ByteBuffer.getUInt16(position: Int): Int {
+    return getShort(position).toInt() and 0xffff
+  }
+
+  private fun ByteBuffer.getUInt32(position: Int): Long {
+    return getInt(position).toLong() and ZipFormat.MAX_UINT32
+  }
+}
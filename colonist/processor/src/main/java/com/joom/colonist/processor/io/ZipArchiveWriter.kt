@@ -0,0 +1,166 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipException
+
+class ZipArchiveWriter(path: Path) : Closeable {
+  private val output = BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE)
+  private val entries = ArrayList<ZipArchiveEntry>()
+  private var position = 0L
+
+  fun write(entry: ZipArchiveEntry, rawData: ByteArray) {
+    if (entry.size >= ZipFormat.MAX_UINT32 || entry.compressedSize >= ZipFormat.MAX_UINT32) {
+      throw ZipException("Entry ${entry.name} is too large")
+    }
+
+    val name = entry.name.toByteArray(Charsets.UTF_8)
+    val header = allocate(ZipFormat.LOCAL_HEADER_SIZE)
+      .putInt(ZipFormat.LOCAL_HEADER_SIGNATURE)
+      .putShort(ZipFormat.VERSION)
+      .putShort(ZipFormat.UTF8_FLAG)
+      .putShort(entry.method)
+      .putShort(entry.time)
+      .putShort(entry.date)
+      .putInt(entry.crc)
+      .putInt(entry.compressedSize.toInt())
+      .putInt(entry.size.toInt())
+      .putShort(name.size)
+      .putShort(0)
+
+    entries += entry.copy(localHeaderOffset = position)
+    write(header)
+    write(name)
+    write(rawData)
+  }
+
+  fun flush() {
+    output.flush()
+  }
+
+  override fun close() {
+    output.use {
+      writeCentralDirectory()
+    }
+  }
+
+  private fun writeCentralDirectory() {
+    val centralDirectoryOffset = position
+    for (entry in entries) {
+      val name = entry.name.toByteArray(Charsets.UTF_8)
+      val isZip64 = entry.localHeaderOffset >= ZipFormat.MAX_UINT32
+      val header = allocate(ZipFormat.CENTRAL_HEADER_SIZE)
+        .putInt(ZipFormat.CENTRAL_HEADER_SIGNATURE)
+        .putShort(if (isZip64) ZipFormat.ZIP64_VERSION else ZipFormat.VERSION)
+        .putShort(if (isZip64) ZipFormat.ZIP64_VERSION else ZipFormat.VERSION)
+        .putShort(ZipFormat.UTF8_FLAG)
+        .putShort(entry.method)
+        .putShort(entry.time)
+        .putShort(entry.date)
+        .putInt(entry.crc)
+        .putInt(entry.compressedSize.toInt())
+        .putInt(entry.size.toInt())
+        .putShort(name.size)
+        .putShort(if (isZip64) ZIP64_OFFSET_EXTRA_FIELD_SIZE else 0)
+        .putShort(0)
+        .putShort(0)
+        .putShort(0)
+        .putInt(0)
+        .putInt(if (isZip64) ZipFormat.MAX_UINT32.toInt() else entry.localHeaderOffset.toInt())
+
+      write(header)
+      write(name)
+      if (isZip64) {
+        write(
+          allocate(ZIP64_OFFSET_EXTRA_FIELD_SIZE)
+            .putShort(ZipFormat.ZIP64_EXTRA_FIELD_ID)
+            .putShort(Long.SIZE_BYTES)
+            .putLong(entry.localHeaderOffset)
+        )
+      }
+    }
+
+    val centralDirectorySize = position - centralDirectoryOffset
+    val isZip64 = entries.size >= ZipFormat.MAX_UINT16 ||
+        centralDirectoryOffset >= ZipFormat.MAX_UINT32 ||
+        centralDirectorySize >= ZipFormat.MAX_UINT32
+
+    if (isZip64) {
+      val zip64EndOffset = position
+      write(
+        allocate(ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE)
+          .putInt(ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+          .putLong((ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE - 12).toLong())
+          .putShort(ZipFormat.ZIP64_VERSION)
+          .putShort(ZipFormat.ZIP64_VERSION)
+          .putInt(0)
+          .putInt(0)
+          .putLong(entries.size.toLong())
+          .putLong(entries.size.toLong())
+          .putLong(centralDirectorySize)
+          .putLong(centralDirectoryOffset)
+      )
+      write(
+        allocate(ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE)
+          .putInt(ZipFormat.ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE)
+          .putInt(0)
+          .putLong(zip64EndOffset)
+          .putInt(1)
+      )
+    }
+
+    write(
+      allocate(ZipFormat.END_OF_CENTRAL_DIRECTORY_SIZE)
+        .putInt(ZipFormat.END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+        .putShort(0)
+        .putShort(0)
+        .putShort(minOf(entries.size, ZipFormat.MAX_UINT16))
+        .putShort(minOf(entries.size, ZipFormat.MAX_UINT16))
+        .putInt(minOf(centralDirectorySize, ZipFormat.MAX_UINT32).toInt())
+        .putInt(minOf(centralDirectoryOffset, ZipFormat.MAX_UINT32).toInt())
+        .putShort(0)
+    )
+  }
+
+  private fun write(buffer: ByteBuffer) {
+    write(buffer.array())
+  }
+
+  private fun write(data: ByteArray) {
+    output.write(data)
+    position += data.size
+  }
+
+  private fun allocate(size: Int): ByteBuffer {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+  }
+
+  private fun ByteBuffer.putShort(value: Int): ByteBuffer {
+    return putShort(value.toShort())
+  }
+
+  companion object {
+    private const val BUFFER_SIZE = 64 * 1024
+    private const val ZIP64_OFFSET_EXTRA_FIELD_SIZE = 4 + Long.SIZE_BYTES
+  }
+}
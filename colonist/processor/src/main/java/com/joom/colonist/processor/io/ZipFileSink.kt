@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.nio.file.Path
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipException
+import kotlin.concurrent.read
+import kotlin.concurrent.thread
+import kotlin.concurrent.write
+
+class ZipFileSink(private val path: Path) : SegmentedFileSink, RawFileSink {
+  private val names = ConcurrentHashMap.newKeySet<String>()
+  private val commands = ArrayBlockingQueue<Command>(QUEUE_CAPACITY)
+  private val closeLock = ReentrantReadWriteLock()
+  private var isClosed = false
+
+  @Volatile
+  private var failure: Throwable? = null
+
+  private val writerThread: Thread
+
+  init {
+    val writer = ZipArchiveWriter(path)
+    writerThread = thread(name = "colonist-zip-writer", isDaemon = true) {
+      processCommands(writer)
+    }
+  }
+
+  override fun createFile(path: String, data: ByteArray) {
+    write(compress(path, data))
+  }
+
+  override fun createDirectory(path: String) {
+    writeDirectory(path)
+  }
+
+  override fun copyRawFile(fileSource: ZipFileSource, path: String): Int {
+    val command = readRawFile(fileSource, path)
+    write(command)
+    return command.rawData.size
+  }
+
+  override fun createSegment(): FileSegment {
+    return Segment()
+  }
+
+  override fun flush() {
+    val latch = CountDownLatch(1)
+    send(Command.Flush(latch))
+    latch.await()
+    checkFailure()
+  }
+
+  override fun close() {
+    val shouldClose = closeLock.write {
+      if (isClosed) {
+        false
+      } else {
+        isClosed = true
+        commands.put(Command.Close)
+        true
+      }
+    }
+
+    if (shouldClose) {
+      writerThread.join()
+    }
+
+    checkFailure()
+  }
+
+  override fun toString(): String {
+    return "ZipFileSink($path)"
+  }
+
+  private fun compress(path: String, data: ByteArray): Command.Write {
+    val compressedData = deflate(data)
+    val crc = CRC32().apply { update(data) }
+    val entry = ZipArchiveEntry(
+      name = path,
+      method = ZipFormat.METHOD_DEFLATED,
+      time = ENTRY_TIME,
+      date = ENTRY_DATE,
+      crc = crc.value.toInt(),
+      compressedSize = compressedData.size.toLong(),
+      size = data.size.toLong(),
+    )
+
+    return Command.Write(entry, compressedData)
+  }
+
+  private fun readRawFile(fileSource: ZipFileSource, path: String): Command.Write {
+    val rawFile = fileSource.readRawFile(path)
+    return Command.Write(rawFile.entry, rawFile.rawData)
+  }
+
+  private fun write(command: Command.Write) {
+    if (!names.add(command.entry.name)) {
+      throw ZipException("duplicate entry: ${command.entry.name}")
+    }
+
+    send(command)
+  }
+
+  private fun writeDirectory(path: String) {
+    val name = if (path.endsWith('/')) path else "$path/"
+    if (names.add(name)) {
+      val entry = ZipArchiveEntry(
+        name = name,
+        method = ZipFormat.METHOD_STORED,
+        time = ENTRY_TIME,
+        date = ENTRY_DATE,
+        crc = 0,
+        compressedSize = 0L,
+        size = 0L,
+      )
+
+      send(Command.Write(entry, EMPTY_DATA))
+    }
+  }
+
+  private fun send(command: Command) {
+    checkFailure()
+    closeLock.read {
+      check(!isClosed) { "$this is closed" }
+      commands.put(command)
+    }
+  }
+
+  private fun checkFailure() {
+    failure?.let { throw IOException("Failed to write $path", it) }
+  }
+
+  private fun processCommands(writer: ZipArchiveWriter) {
+    while (true) {
+      when (val command = commands.take()) {
+        is Command.Write -> runWriter { writer.write(command.entry, command.rawData) }
+        is Command.Flush -> {
+          runWriter { writer.flush() }
+          command.latch.countDown()
+        }
+
+        Command.Close -> {
+          try {
+            writer.close()
+          } catch (exception: Throwable) {
+            failure = failure ?: exception
+          }
+          return
+        }
+      }
+    }
+  }
+
+  private inline fun runWriter(action: () -> Unit) {
+    if (failure == null) {
+      try {
+        action()
+      } catch (exception: Throwable) {
+        failure = exception
+      }
+    }
+  }
+
+  private fun deflate(data: ByteArray): ByteArray {
+    val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, true)
+    try {
+      deflater.setInput(data)
+      deflater.finish()
+      val output = ByteArrayOutputStream(data.size / 2 + BUFFER_SIZE)
+      val buffer = ByteArray(BUFFER_SIZE)
+      while (!deflater.finished()) {
+        val count = deflater.deflate(buffer)
+        output.write(buffer, 0, count)
+      }
+      return output.toByteArray()
+    } finally {
+      deflater.end()
+    }
+  }
+
+  private inner class Segment : FileSegment {
+    private val actions = ArrayList<() -> Unit>()
+
+    override fun createFile(path: String, data: ByteArray) {
+      val command = compress(path, data)
+      actions += { write(command) }
+    }
+
+    override fun createDirectory(path: String) {
+      actions += { writeDirectory(path) }
+    }
+
+    override fun copyRawFile(fileSource: ZipFileSource, path: String): Int {
+      val command = readRawFile(fileSource, path)
+      actions += { write(command) }
+      return command.rawData.size
+    }
+
+    override fun commit() {
+      actions.forEach { it() }
+      actions.clear()
+    }
+
+    override fun flush() = Unit
+
+    override fun close() = Unit
+  }
+
+  private sealed class Command {
+    class Write(val entry: ZipArchiveEntry, val rawData: ByteArray) : Command()
+    class Flush(val latch: CountDownLatch) : Command()
+    object Close : Command()
+  }
+
+  private companion object {
+    // Entries get a fixed timestamp so the output doesn't depend on when it was built. This is 1980-02-01 00:00, the same
+    // constant Gradle uses for reproducible archives, as 1980-01-01 is shifted before the DOS epoch in some time zones.
+    private const val ENTRY_TIME = 0
+    private const val ENTRY_DATE = (0 shl 9) or (2 shl 5) or 1
+    private const val BUFFER_SIZE = 8 * 1024
+    private const val QUEUE_CAPACITY = 256
+    private val EMPTY_DATA = ByteArray(0)
+  }
+}
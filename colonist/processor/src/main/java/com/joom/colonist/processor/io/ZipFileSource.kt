@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import com.joom.grip.io.FileSource
+import java.io.FileNotFoundException
+import java.nio.file.Path
+
+class ZipFileSource(private val path: Path) : FileSource {
+  private val reader = ZipArchiveReader(path)
+  private val entriesByName = HashMap<String, ZipArchiveEntry>().also { entriesByName ->
+    reader.entries.forEach { entriesByName.putIfAbsent(it.name, it) }
+  }
+
+  override fun listFiles(callback: (name: String, type: FileSource.EntryType) -> Unit) {
+    for (entry in reader.entries) {
+      val type = when {
+        entry.isDirectory -> FileSource.EntryType.DIRECTORY
+        entry.name.endsWith(CLASS_EXTENSION) -> FileSource.EntryType.CLASS
+        else -> FileSource.EntryType.FILE
+      }
+      callback(entry.name, type)
+    }
+  }
+
+  override fun readFile(path: String): ByteArray {
+    return reader.readData(getEntry(path))
+  }
+
+  fun readRawFile(path: String): RawFile {
+    val entry = getEntry(path)
+    return RawFile(entry, reader.readRawData(entry))
+  }
+
+  override fun close() {
+    reader.close()
+  }
+
+  override fun toString(): String {
+    return "ZipFileSource($path)"
+  }
+
+  private fun getEntry(path: String): ZipArchiveEntry {
+    return entriesByName[path] ?: throw FileNotFoundException("$path is not found in ${this.path}")
+  }
+
+  class RawFile(
+    val entry: ZipArchiveEntry,
+    val rawData: ByteArray,
+  )
+
+  private companion object {
+    private const val CLASS_EXTENSION = ".class"
+  }
+}
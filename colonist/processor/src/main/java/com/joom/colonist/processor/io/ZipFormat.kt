@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+internal object ZipFormat {
+  const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+  const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+  const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+  const val ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50
+  const val ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50
+
+  const val LOCAL_HEADER_SIZE = 30
+  const val CENTRAL_HEADER_SIZE = 46
+  const val END_OF_CENTRAL_DIRECTORY_SIZE = 22
+  const val ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56
+  const val ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20
+  const val MAX_COMMENT_SIZE = 0xffff
+
+  const val ZIP64_EXTRA_FIELD_ID = 0x0001
+
+  const val METHOD_STORED = 0
+  const val METHOD_DEFLATED = 8
+
+  const val VERSION = 20
+  const val ZIP64_VERSION = 45
+  const val UTF8_FLAG = 0x0800
+
+  const val MAX_UINT16 = 0xffff
+  const val MAX_UINT32 = 0xffffffffL
+}
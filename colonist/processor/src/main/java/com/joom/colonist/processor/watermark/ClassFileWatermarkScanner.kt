@@ -0,0 +1,148 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.watermark
+
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.BitSet
+
+internal object ClassFileWatermarkScanner {
+  private const val MAGIC = 0xCAFEBABE.toInt()
+
+  private const val CONSTANT_UTF8 = 1
+  private const val CONSTANT_INTEGER = 3
+  private const val CONSTANT_FLOAT = 4
+  private const val CONSTANT_LONG = 5
+  private const val CONSTANT_DOUBLE = 6
+  private const val CONSTANT_CLASS = 7
+  private const val CONSTANT_STRING = 8
+  private const val CONSTANT_FIELDREF = 9
+  private const val CONSTANT_METHODREF = 10
+  private const val CONSTANT_INTERFACE_METHODREF = 11
+  private const val CONSTANT_NAME_AND_TYPE = 12
+  private const val CONSTANT_METHOD_HANDLE = 15
+  private const val CONSTANT_METHOD_TYPE = 16
+  private const val CONSTANT_DYNAMIC = 17
+  private const val CONSTANT_INVOKE_DYNAMIC = 18
+  private const val CONSTANT_MODULE = 19
+  private const val CONSTANT_PACKAGE = 20
+
+  private val ATTRIBUTE_NAME = ColonistAttribute().type.toByteArray(Charsets.UTF_8)
+
+  fun hasWatermark(buffer: ByteBuffer): Boolean {
+    val data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN)
+    return try {
+      scan(data)
+    } catch (exception: BufferUnderflowException) {
+      false
+    } catch (exception: IllegalArgumentException) {
+      false
+    }
+  }
+
+  private fun scan(data: ByteBuffer): Boolean {
+    if (data.remaining() < 10 || data.int != MAGIC) {
+      return false
+    }
+
+    data.short // minor_version
+    data.short // major_version
+    val constantCount = data.unsignedShort()
+    val attributeNameIndices = readConstantPool(data, constantCount)
+    if (attributeNameIndices.isEmpty) {
+      return false
+    }
+
+    data.skip(6) // access_flags, this_class, super_class
+    data.skip(data.unsignedShort() * 2)
+    skipMembers(data)
+    skipMembers(data)
+
+    repeat(data.unsignedShort()) {
+      val nameIndex = data.unsignedShort()
+      if (attributeNameIndices.get(nameIndex)) {
+        return true
+      }
+      data.skip(data.int)
+    }
+
+    return false
+  }
+
+  private fun readConstantPool(data: ByteBuffer, constantCount: Int): BitSet {
+    val attributeNameIndices = BitSet()
+    var index = 1
+    while (index < constantCount) {
+      when (val tag = data.get().toInt()) {
+        CONSTANT_UTF8 -> {
+          val length = data.unsignedShort()
+          if (isAttributeName(data, length)) {
+            attributeNameIndices.set(index)
+          }
+          data.skip(length)
+        }
+
+        CONSTANT_INTEGER, CONSTANT_FLOAT, CONSTANT_FIELDREF, CONSTANT_METHODREF, CONSTANT_INTERFACE_METHODREF,
+        CONSTANT_NAME_AND_TYPE, CONSTANT_DYNAMIC, CONSTANT_INVOKE_DYNAMIC -> data.skip(4)
+
+        CONSTANT_LONG, CONSTANT_DOUBLE -> {
+          data.skip(8)
+          index += 1
+        }
+
+        CONSTANT_CLASS, CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE, CONSTANT_PACKAGE -> data.skip(2)
+        CONSTANT_METHOD_HANDLE -> data.skip(3)
+        else -> throw IllegalArgumentException("Unknown constant pool tag $tag")
+      }
+
+      index += 1
+    }
+
+    return attributeNameIndices
+  }
+
+  private fun isAttributeName(data: ByteBuffer, length: Int): Boolean {
+    if (length != ATTRIBUTE_NAME.size) {
+      return false
+    }
+
+    val position = data.position()
+    return ATTRIBUTE_NAME.indices.all { data.get(position + it) == ATTRIBUTE_NAME[it] }
+  }
+
+  private fun skipMembers(data: ByteBuffer) {
+    repeat(data.unsignedShort()) {
+      data.skip(6) // access_flags, name_index, descriptor_index
+      repeat(data.unsignedShort()) {
+        data.skip(2)
+        data.skip(data.int)
+      }
+    }
+  }
+
+  private fun ByteBuffer.unsignedShort(): Int {
+    return short.toInt() and 0xffff
+  }
+
+  private fun ByteBuffer.skip(count: Int) {
+    if (count < 0 || count > remaining()) {
+      throw BufferUnderflowException()
+    }
+    position(position() + count)
+  }
+}
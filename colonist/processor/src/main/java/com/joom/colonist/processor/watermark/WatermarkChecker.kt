@@ -18,8 +18,10 @@ package com.joom.colonist.processor.watermark
 
 import java.io.File
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
 import org.objectweb.asm.Attribute
-import org.objectweb.asm.ClassReader
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.Opcodes
 
@@ -46,6 +48,7 @@ class WatermarkChecker : ClassVisitor(Opcodes.ASM9) {
 
   companion object {
     private const val CLASS_EXTENSION = "class"
+    private const val MAPPING_THRESHOLD = 64 * 1024L
 
     @Throws(IOException::class)
     @JvmStatic
@@ -54,14 +57,19 @@ class WatermarkChecker : ClassVisitor(Opcodes.ASM9) {
         return false
       }
 
-      val classReader = ClassReader(file.readBytes())
-      val checker = WatermarkChecker()
-      classReader.accept(
-        checker,
-        arrayOf<Attribute>(ColonistAttribute()),
-        ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
-      )
-      return checker.isColonistClass
+      // Small files are cheaper to read than to map, and every mapping stays alive until it's garbage collected.
+      if (file.length() < MAPPING_THRESHOLD) {
+        return isColonistClass(ByteBuffer.wrap(file.readBytes()))
+      }
+
+      return FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+        isColonistClass(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+      }
+    }
+
+    @JvmStatic
+    fun isColonistClass(buffer: ByteBuffer): Boolean {
+      return ClassFileWatermarkScanner.hasWatermark(buffer)
     }
   }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import java.nio.file.Files
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ColonistResultSerializerTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `read returns written result`() {
+    val file = temporaryFolder.root.toPath().resolve("result.txt")
+    val result = ColonistResult(
+      patchedFiles = listOf("com/joom/Colony.class", "META-INF/versions/11/com/joom/Other Colony.class"),
+      generatedFiles = listOf("com/joom/Colony\$\$Delegate.class"),
+      settlerFiles = listOf("com/joom/Settler.class"),
+      fileHashes = mapOf(
+        "com/joom/Colony.class" to "0123",
+        "META-INF/versions/11/com/joom/Other Colony.class" to "4567",
+        "com/joom/Colony\$\$Delegate.class" to "89ab",
+      ),
+      settlerHierarchyFiles = listOf("com/joom/BaseSettler.class"),
+    )
+
+    ColonistResultSerializer.write(result, file)
+
+    Assert.assertEquals(result, ColonistResultSerializer.read(file))
+  }
+
+  @Test
+  fun `read returns null for missing file`() {
+    Assert.assertNull(ColonistResultSerializer.read(temporaryFolder.root.toPath().resolve("missing.txt")))
+  }
+
+  @Test
+  fun `read returns null for file with unknown header`() {
+    val file = temporaryFolder.newFile().toPath()
+    Files.write(file, listOf("colonist-result 0", "P com/joom/Colony.class"))
+
+    Assert.assertNull(ColonistResultSerializer.read(file))
+  }
+}
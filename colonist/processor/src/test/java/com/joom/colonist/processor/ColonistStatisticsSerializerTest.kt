@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ColonistStatisticsSerializerTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `write reports phases counters and settlers`() {
+    val statistics = ColonistStatistics()
+    statistics.measure("findColonies") { }
+    statistics.increment(ColonistStatistics.Counter.CLASSES_READ, 3)
+    statistics.increment(ColonistStatistics.Counter.BYTES_WRITTEN, 1024)
+    statistics.addSettlerCount("com.joom.colonist.Colony", 2)
+
+    val file = temporaryFolder.root.toPath().resolve("report/report.json")
+    ColonistStatisticsSerializer.write(statistics, file)
+    val report = String(Files.readAllBytes(file))
+
+    Assert.assertTrue(report.contains("{\"name\": \"findColonies\", \"wallTimeMs\": "))
+    Assert.assertTrue(report.contains("\"classesRead\": 3"))
+    Assert.assertTrue(report.contains("\"bytesWritten\": 1024"))
+    Assert.assertTrue(report.contains("\"classesPatched\": 0"))
+    Assert.assertTrue(report.contains("\"com.joom.colonist.Colony\": 2"))
+  }
+
+  @Test
+  fun `write escapes names`() {
+    val statistics = ColonistStatistics()
+    statistics.addSettlerCount("a\"b\\c\n", 1)
+
+    val file = temporaryFolder.root.toPath().resolve("report.json")
+    ColonistStatisticsSerializer.write(statistics, file)
+
+    Assert.assertTrue(String(Files.readAllBytes(file)).contains("\"a\\\"b\\\\c\\u000a\": 1"))
+  }
+
+  @Test
+  fun `measure records phase when action fails`() {
+    val statistics = ColonistStatistics()
+    try {
+      statistics.measure("failing") { throw IllegalStateException() }
+    } catch (exception: IllegalStateException) {
+      // Expected.
+    }
+
+    Assert.assertEquals(listOf("failing"), statistics.phases.map { it.name })
+  }
+
+  @Test
+  fun `measure includes cpu time of common pool workers`() {
+    val statistics = ColonistStatistics()
+    statistics.measure("busy") {
+      (0 until BUSY_TASK_COUNT).toList().parallelStream().forEach { spin(BUSY_CPU_TIME_NANOS) }
+    }
+
+    Assert.assertTrue(statistics.phases.single().cpuTimeNanos >= BUSY_CPU_TIME_NANOS)
+  }
+
+  private fun spin(cpuTimeNanos: Long) {
+    val threadMXBean = ManagementFactory.getThreadMXBean()
+    val start = threadMXBean.currentThreadCpuTime
+    while (threadMXBean.currentThreadCpuTime - start < cpuTimeNanos) {
+      // Burns CPU time of the current thread.
+    }
+  }
+
+  private companion object {
+    private const val BUSY_TASK_COUNT = 4
+    private const val BUSY_CPU_TIME_NANOS = 20_000_000L
+  }
+}
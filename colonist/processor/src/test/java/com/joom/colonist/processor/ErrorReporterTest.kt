@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import java.util.concurrent.CancellationException
+import org.junit.Assert
+import org.junit.Test
+
+class ErrorReporterTest {
+
+  @Test
+  fun `errors reported concurrently are all collected`() {
+    val errorReporter = ErrorReporter()
+    (0 until ERROR_COUNT).toList().parallelStream().forEach { errorReporter.reportError("Error $it") }
+
+    Assert.assertEquals(ERROR_COUNT, errorReporter.getErrors().size)
+  }
+
+  @Test
+  fun `errors are ordered by message`() {
+    val errorReporter = ErrorReporter()
+    errorReporter.reportError("b")
+    errorReporter.reportError("c")
+    errorReporter.reportError("a")
+
+    Assert.assertEquals(listOf("a", "b", "c"), errorReporter.getErrors().map { it.message })
+  }
+
+  @Test
+  fun `regular errors do not cancel processing`() {
+    val errorReporter = ErrorReporter()
+    errorReporter.reportError("Error")
+
+    Assert.assertFalse(errorReporter.isCancelled)
+    errorReporter.checkCancelled()
+  }
+
+  @Test(expected = CancellationException::class)
+  fun `fatal errors cancel processing`() {
+    val errorReporter = ErrorReporter()
+    errorReporter.reportFatalError(ProcessingException("Error"))
+
+    Assert.assertTrue(errorReporter.isCancelled)
+    errorReporter.checkCancelled()
+  }
+
+  private companion object {
+    private const val ERROR_COUNT = 1000
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import com.joom.colonist.processor.integration.IntegrationTestRule
+import com.joom.colonist.processor.integration.JvmRuntimeUtil
+import com.joom.colonist.processor.integration.shouldNotHaveErrors
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.io.path.isRegularFile
+import kotlin.streams.toList
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class InPlaceProcessingTest {
+
+  @get:Rule
+  val rule = IntegrationTestRule("com.joom.colonist.processor.incremental")
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `unmodified classes stay linked to their backups`() {
+    val classes = rule.compileProject("supertype_added")
+    val backup = temporaryFolder.newFolder().toPath()
+
+    backupClasses(classes, backup)
+    // The second run sees the classes the way the next backup leaves them, since linked classes aren't backed up again.
+    repeat(2) {
+      process(backup, classes)
+
+      Assert.assertTrue(Files.isSameFile(classes.resolve(UNRELATED_CLASS_PATH), backup.resolve(UNRELATED_CLASS_PATH)))
+      Assert.assertTrue(Files.isSameFile(classes.resolve(FIRST_PLUGIN_PATH), backup.resolve(FIRST_PLUGIN_PATH)))
+      Assert.assertFalse(Files.isSameFile(classes.resolve(PLUGIN_REGISTRY_PATH), backup.resolve(PLUGIN_REGISTRY_PATH)))
+    }
+  }
+
+  private fun backupClasses(classes: Path, backup: Path) {
+    val files = Files.walk(classes).use { paths -> paths.filter { it.isRegularFile() }.toList() }
+    files.forEach { file ->
+      val backupFile = backup.resolve(classes.relativize(file).toString())
+      Files.createDirectories(backupFile.parent)
+      Files.createLink(backupFile, file)
+    }
+  }
+
+  private fun process(input: Path, output: Path) {
+    val errorReporter = ErrorReporter()
+    val parameters = ColonistParameters(
+      inputs = listOf(input),
+      outputFactory = ColonistOutputFactory.create(listOf(input), listOf(output), output),
+      bootClasspath = JvmRuntimeUtil.computeRuntimeClasspath(),
+      discoveryClasspath = emptyList(),
+      classpath = emptyList(),
+      discoverSettlers = true,
+    )
+
+    ColonistProcessor.process(parameters, errorReporter)
+    errorReporter.shouldNotHaveErrors()
+  }
+
+  private companion object {
+    private const val PACKAGE_PATH = "com/joom/colonist/processor/incremental"
+    private const val FIRST_PLUGIN_PATH = "$PACKAGE_PATH/FirstPlugin.class"
+    private const val PLUGIN_REGISTRY_PATH = "$PACKAGE_PATH/PluginRegistry.class"
+    private const val UNRELATED_CLASS_PATH = "$PACKAGE_PATH/UnrelatedClass.class"
+  }
+}
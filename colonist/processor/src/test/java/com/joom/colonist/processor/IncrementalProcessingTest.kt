@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import com.joom.colonist.processor.integration.IntegrationTestRule
+import com.joom.colonist.processor.integration.JvmRuntimeUtil
+import com.joom.colonist.processor.integration.shouldNotHaveErrors
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class IncrementalProcessingTest {
+
+  @get:Rule
+  val rule = IntegrationTestRule("com.joom.colonist.processor.incremental")
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `settlers are removed when a supertype of their base class is removed`() {
+    val input = rule.compileProject("supertype_added")
+    val output = temporaryFolder.newFolder().toPath()
+    val previousResult = process(input, output)
+    Assert.assertTrue(FIRST_PLUGIN_PATH in previousResult.settlerFiles)
+
+    replaceClass(rule.compileProject("supertype_removed"), input, BASE_PLUGIN_PATH)
+    val statistics = ColonistStatistics()
+    val result = process(input, output, createChanges(input, setOf(BASE_PLUGIN_PATH), previousResult), statistics)
+
+    Assert.assertTrue(statistics.phases.any { it.name == "findSettlers" })
+    Assert.assertFalse(FIRST_PLUGIN_PATH in result.settlerFiles)
+  }
+
+  @Test
+  fun `settlers are added when a supertype of their base class is added`() {
+    val input = rule.compileProject("supertype_removed")
+    val output = temporaryFolder.newFolder().toPath()
+    val previousResult = process(input, output)
+    Assert.assertFalse(FIRST_PLUGIN_PATH in previousResult.settlerFiles)
+
+    replaceClass(rule.compileProject("supertype_added"), input, BASE_PLUGIN_PATH)
+    val result = process(input, output, createChanges(input, setOf(BASE_PLUGIN_PATH), previousResult))
+
+    Assert.assertTrue(FIRST_PLUGIN_PATH in result.settlerFiles)
+  }
+
+  @Test
+  fun `settler hierarchy is recorded`() {
+    val input = rule.compileProject("supertype_added")
+    val result = process(input, temporaryFolder.newFolder().toPath())
+
+    Assert.assertTrue(BASE_PLUGIN_PATH in result.settlerHierarchyFiles)
+    Assert.assertFalse(UNRELATED_CLASS_PATH in result.settlerHierarchyFiles)
+  }
+
+  @Test
+  fun `settler discovery is skipped when an unrelated class changes`() {
+    val input = rule.compileProject("supertype_added")
+    val output = temporaryFolder.newFolder().toPath()
+    val previousResult = process(input, output)
+
+    val statistics = ColonistStatistics()
+    val result = process(input, output, createChanges(input, setOf(UNRELATED_CLASS_PATH), previousResult), statistics)
+
+    Assert.assertFalse(statistics.phases.any { it.name == "findSettlers" })
+    Assert.assertEquals(previousResult.settlerFiles, result.settlerFiles)
+  }
+
+  private fun createChanges(input: Path, changedPaths: Set<String>, previousResult: ColonistResult): ColonistChanges {
+    return ColonistChanges(
+      inputChanges = mapOf(input to InputChange.ChangedFiles(changedPaths = changedPaths, removedPaths = emptySet())),
+      previousResult = previousResult,
+    )
+  }
+
+  private fun replaceClass(source: Path, target: Path, path: String) {
+    Files.copy(source.resolve(path), target.resolve(path), StandardCopyOption.REPLACE_EXISTING)
+  }
+
+  private fun process(
+    input: Path,
+    output: Path,
+    changes: ColonistChanges? = null,
+    statistics: ColonistStatistics = ColonistStatistics(),
+  ): ColonistResult {
+    val errorReporter = ErrorReporter()
+    val parameters = ColonistParameters(
+      inputs = listOf(input),
+      outputFactory = ColonistOutputFactory.create(output),
+      bootClasspath = JvmRuntimeUtil.computeRuntimeClasspath(),
+      discoveryClasspath = emptyList(),
+      classpath = emptyList(),
+      discoverSettlers = true,
+      changes = changes,
+    )
+
+    val result = ColonistProcessor.process(parameters, errorReporter, statistics)
+    errorReporter.shouldNotHaveErrors()
+    return result
+  }
+
+  private companion object {
+    private const val PACKAGE_PATH = "com/joom/colonist/processor/incremental"
+    private const val BASE_PLUGIN_PATH = "$PACKAGE_PATH/BasePlugin.class"
+    private const val FIRST_PLUGIN_PATH = "$PACKAGE_PATH/FirstPlugin.class"
+    private const val UNRELATED_CLASS_PATH = "$PACKAGE_PATH/UnrelatedClass.class"
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.joom.colonist.processor
 
+import java.nio.file.Files
 import java.nio.file.Path
 import org.junit.Assert
 import org.junit.Rule
@@ -44,6 +45,25 @@ class MultipleSinkOutputTest {
     }
   }
 
+  @Test
+  fun `getFileSink does not touch outputs of other inputs`() {
+    val firstInput = temporaryFolder.newFile().toPath()
+    val secondInput = temporaryFolder.newFile().toPath()
+    val firstOutput = temporaryFolder.root.toPath().resolve("first.jar")
+    val secondOutput = temporaryFolder.root.toPath().resolve("second.jar")
+
+    MultipleSinkOutput(
+      inputs = listOf(firstInput, secondInput),
+      outputs = listOf(firstOutput, secondOutput),
+      generationPath = temporaryFolder.newFolder().toPath()
+    ).use { output ->
+      output.getFileSink(firstInput).createFile("file.txt", byteArrayOf(1))
+    }
+
+    Assert.assertTrue(Files.exists(firstOutput))
+    Assert.assertFalse(Files.exists(secondOutput))
+  }
+
   @Test
   fun `getGenerationSink returns the same instance`() {
     val path = temporaryFolder.newFolder().toPath()
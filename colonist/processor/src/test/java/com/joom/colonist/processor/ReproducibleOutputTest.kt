@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor
+
+import com.joom.colonist.processor.integration.IntegrationTestRule
+import com.joom.colonist.processor.integration.JvmRuntimeUtil
+import com.joom.colonist.processor.integration.shouldNotHaveErrors
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ReproducibleOutputTest {
+
+  @get:Rule
+  val rule = IntegrationTestRule("com.joom.colonist.processor.reproducible")
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `concurrent runs produce identical jars`() {
+    val compiled = rule.compileProject("many_settlers")
+    val outputs = listOf(temporaryFolder.root.toPath().resolve("first.jar"), temporaryFolder.root.toPath().resolve("second.jar"))
+
+    val executor = Executors.newFixedThreadPool(outputs.size)
+    try {
+      outputs
+        .map { output -> executor.submit(Callable { process(compiled, output) }) }
+        .forEach { it.get() }
+    } finally {
+      executor.shutdown()
+    }
+
+    Assert.assertArrayEquals(Files.readAllBytes(outputs[0]), Files.readAllBytes(outputs[1]))
+  }
+
+  private fun process(input: Path, output: Path) {
+    val errorReporter = ErrorReporter()
+    val parameters = ColonistParameters(
+      inputs = listOf(input),
+      outputFactory = ColonistOutputFactory.create(output),
+      bootClasspath = JvmRuntimeUtil.computeRuntimeClasspath(),
+      discoveryClasspath = emptyList(),
+      classpath = emptyList(),
+      discoverSettlers = true,
+    )
+
+    ColonistProcessor.process(parameters, errorReporter)
+    errorReporter.shouldNotHaveErrors()
+  }
+}
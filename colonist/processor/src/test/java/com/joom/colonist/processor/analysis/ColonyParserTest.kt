@@ -148,11 +148,11 @@ class ColonyParserTest {
   }
 
   private fun createColonyParser(): ColonyParser {
-    return ColonyParserImpl(grip)
+    return ColonyParserImpl(grip.classRegistry)
   }
 
   private fun createColonyMarkerParser(): ColonyMarkerParser {
-    return ColonyMarkerParserImpl(grip, SettlerSelectorParserImpl, SettlerProducerParserImpl, SettlerAcceptorParserImpl)
+    return ColonyMarkerParserImpl(grip.classRegistry, SettlerSelectorParserImpl, SettlerProducerParserImpl, SettlerAcceptorParserImpl)
   }
 
   private fun runtimeWithCurrentLocation(): Iterable<Path> {
@@ -17,11 +17,14 @@
 package com.joom.colonist.processor.analysis
 
 import com.joom.colonist.processor.ErrorReporter
+import com.joom.colonist.processor.index.ClassTable
+import com.joom.colonist.processor.index.ScanningClassIndexProvider
 import com.joom.colonist.processor.integration.IntegrationTestRule
 import com.joom.colonist.processor.integration.JvmRuntimeUtil
 import com.joom.colonist.processor.integration.shouldNotHaveErrors
 import com.joom.colonist.processor.model.Settler
 import com.joom.colonist.processor.model.SettlerProducer
+import com.joom.colonist.processor.model.SettlerProducerWithSelector
 import com.joom.colonist.processor.model.SettlerSelector
 import com.joom.grip.GripFactory
 import com.joom.grip.mirrors.Type
@@ -209,6 +212,21 @@ class SettlerDiscovererTest {
     settlers.shouldExist { it.type.className.endsWith("ObjectSettler") && it.isKotlinObject }
   }
 
+  @Test
+  fun `returns settlers for every query discovered in one batch`() {
+    val selector = SettlerSelector.SuperType(computeType("abstract_by_supertype", "TestSettler"))
+    val constructorQuery = SettlerProducerWithSelector(SettlerProducer.Constructor, selector)
+    val classQuery = SettlerProducerWithSelector(SettlerProducer.Class, selector)
+    val reporter = ErrorReporter()
+    val discoverer = createDiscoverer("abstract_by_supertype", reporter)
+
+    val settlers = discoverer.discoverSettlers(listOf(constructorQuery, classQuery))
+
+    reporter.shouldNotHaveErrors()
+    settlers.getValue(constructorQuery).shouldHaveSingleElement { it.type.className.endsWith("ConcreteSettler") }
+    settlers.getValue(classQuery).shouldHaveSize(4)
+  }
+
   private fun discoverSettlers(sourceCodeDir: String, selector: SettlerSelector, producer: SettlerProducer): Collection<Settler> {
     val reporter = ErrorReporter()
     val discoverer = createDiscoverer(sourceCodeDir, reporter)
@@ -226,9 +244,15 @@ class SettlerDiscovererTest {
   private fun createDiscoverer(sourceCodeDir: String, errorReporter: ErrorReporter): SettlerDiscoverer {
     val path = rule.compileProject(sourceCodeDir).normalize()
     val grip = GripFactory.INSTANCE.create(listOf(path) + JvmRuntimeUtil.computeRuntimeClasspath())
-    val settlerParser = SettlerParserImpl(grip, SettlerProducerParserImpl, SettlerAcceptorParserImpl)
-
-    return SettlerDiscovererImpl(grip, inputs = listOf(path), settlerParser = settlerParser, errorReporter = errorReporter)
+    val settlerParser = SettlerParserImpl(grip.classRegistry, SettlerProducerParserImpl, SettlerAcceptorParserImpl)
+    val classTable = ClassTable.build(listOf(ScanningClassIndexProvider.getClassIndex(path)))
+
+    return SettlerDiscovererImpl(
+      grip.classRegistry,
+      classTable = classTable,
+      settlerParser = settlerParser,
+      errorReporter = errorReporter
+    )
   }
 
   private companion object {
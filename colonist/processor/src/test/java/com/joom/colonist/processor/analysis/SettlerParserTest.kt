@@ -17,7 +17,7 @@ import org.junit.Test
 class SettlerParserTest {
 
   private val grip = GripFactory.INSTANCE.create(runtimeWithCurrentLocation())
-  private val parser = SettlerParserImpl(grip, SettlerProducerParserImpl, SettlerAcceptorParserImpl)
+  private val parser = SettlerParserImpl(grip.classRegistry, SettlerProducerParserImpl, SettlerAcceptorParserImpl)
 
   @Test
   fun `parseSettler returns settler without overridden producer and acceptors`() {
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ArchiveHasherTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `archive hash is computed for jars only`() {
+    val hasher = ArchiveHasher()
+
+    Assert.assertNull(hasher.getArchiveHash(temporaryFolder.newFolder().toPath()))
+    Assert.assertNull(hasher.getArchiveHash(temporaryFolder.newFile("classes.txt").toPath()))
+    Assert.assertNotNull(hasher.getArchiveHash(temporaryFolder.newFile("classes.jar").toPath()))
+  }
+
+  @Test
+  fun `archive hash changes with jar content`() {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    val hasher = ArchiveHasher()
+
+    writeJar(jar, byteArrayOf(1), FileTime.fromMillis(1000))
+    val first = hasher.getArchiveHash(jar)
+    writeJar(jar, byteArrayOf(2), FileTime.fromMillis(2000))
+    val second = hasher.getArchiveHash(jar)
+
+    Assert.assertNotEquals(first, second)
+  }
+
+  @Test
+  fun `archive hash is reused while size and modification time are unchanged`() {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    val hasher = ArchiveHasher()
+
+    writeJar(jar, byteArrayOf(1), FileTime.fromMillis(1000))
+    val first = hasher.getArchiveHash(jar)
+    writeJar(jar, byteArrayOf(2), FileTime.fromMillis(1000))
+    val second = hasher.getArchiveHash(jar)
+
+    Assert.assertEquals(first, second)
+  }
+
+  private fun writeJar(jar: Path, content: ByteArray, lastModified: FileTime) {
+    Files.write(jar, content)
+    Files.setLastModifiedTime(jar, lastModified)
+  }
+}
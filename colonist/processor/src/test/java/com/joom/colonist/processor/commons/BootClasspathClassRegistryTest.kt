@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.index.ClassHeader
+import com.joom.colonist.processor.index.ClassIndex
+import com.joom.colonist.processor.index.ClassTable
+import com.joom.colonist.processor.integration.JvmRuntimeUtil
+import com.joom.grip.GripFactory
+import com.joom.grip.mirrors.AnnotationMirror
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.nio.file.Path
+import java.nio.file.Paths
+import org.junit.Assert
+import org.junit.Test
+import org.objectweb.asm.Opcodes
+
+class BootClasspathClassRegistryTest {
+
+  @Test
+  fun `boot classpath is not opened for other classes`() {
+    val delegate = PathClassRegistry(Paths.get("classes.jar"))
+    var bootClassRegistryCount = 0
+    val registry = BootClasspathClassRegistry(delegate, BOOT_CLASS_TABLE) {
+      bootClassRegistryCount += 1
+      PathClassRegistry(Paths.get("android.jar"))
+    }
+
+    val path = registry.findPathForType(APPLICATION_TYPE)
+    registry.close()
+
+    Assert.assertEquals(Paths.get("classes.jar"), path)
+    Assert.assertEquals(0, bootClassRegistryCount)
+    Assert.assertTrue(delegate.isClosed)
+  }
+
+  @Test
+  fun `boot classes are loaded from boot classpath`() {
+    val bootClassRegistry = PathClassRegistry(Paths.get("android.jar"))
+    var bootClassRegistryCount = 0
+    val registry = BootClasspathClassRegistry(PathClassRegistry(Paths.get("classes.jar")), BOOT_CLASS_TABLE) {
+      bootClassRegistryCount += 1
+      bootClassRegistry
+    }
+
+    val firstPath = registry.findPathForType(BOOT_TYPE)
+    val secondPath = registry.findPathForType(BOOT_TYPE)
+    registry.close()
+
+    Assert.assertEquals(Paths.get("android.jar"), firstPath)
+    Assert.assertEquals(Paths.get("android.jar"), secondPath)
+    Assert.assertEquals(1, bootClassRegistryCount)
+    Assert.assertTrue(bootClassRegistry.isClosed)
+  }
+
+  @Test
+  fun `cached boot mirrors do not open boot classpath`() {
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    cache.openSession(PathClassRegistry(Paths.get("android.jar"))).use { session ->
+      session.getOrPut(BOOT_ARCHIVE_HASH, BOOT_TYPE) { mirror }
+    }
+    var bootClassRegistryCount = 0
+    val bootClasspathClassRegistry = BootClasspathClassRegistry(PathClassRegistry(Paths.get("classes.jar")), BOOT_CLASS_TABLE) {
+      bootClassRegistryCount += 1
+      PathClassRegistry(Paths.get("android.jar"))
+    }
+    val registry = CachingClassRegistry(bootClasspathClassRegistry, cache, emptyList(), emptyMap(), BOOT_CLASS_TABLE, BOOT_ARCHIVE_HASH)
+
+    val bootMirror = registry.getClassMirror(BOOT_TYPE)
+    registry.close()
+
+    Assert.assertSame(mirror, bootMirror)
+    Assert.assertEquals(0, bootClassRegistryCount)
+  }
+
+  private val mirror: ClassMirror by lazy {
+    GripFactory.INSTANCE.create(JvmRuntimeUtil.computeRuntimeClasspath()).use { grip ->
+      grip.classRegistry.getClassMirror(getObjectTypeByInternalName("java/lang/Object"))
+    }
+  }
+
+  private class PathClassRegistry(private val path: Path) : CloseableClassRegistry {
+    var isClosed = false
+      private set
+
+    override fun getClassMirror(type: Type.Object): ClassMirror {
+      throw UnsupportedOperationException()
+    }
+
+    override fun getAnnotationMirror(type: Type.Object): AnnotationMirror {
+      throw UnsupportedOperationException()
+    }
+
+    override fun findPathForType(type: Type.Object): Path {
+      return path
+    }
+
+    override fun close() {
+      isClosed = true
+    }
+  }
+
+  private companion object {
+    private const val BOOT_ARCHIVE_HASH = "boot"
+    private val BOOT_TYPE = getObjectTypeByInternalName("android/app/Activity")
+    private val APPLICATION_TYPE = getObjectTypeByInternalName("com/joom/colonist/MainActivity")
+
+    private val BOOT_CLASS_TABLE = ClassTable.build(
+      listOf(
+        ClassIndex(
+          listOf(
+            ClassHeader(
+              type = BOOT_TYPE,
+              access = Opcodes.ACC_PUBLIC,
+              superType = getObjectTypeByInternalName("java/lang/Object"),
+              interfaces = emptyList(),
+              annotations = emptyList(),
+            )
+          )
+        )
+      )
+    )
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.integration.JvmRuntimeUtil
+import com.joom.grip.GripFactory
+import com.joom.grip.mirrors.AnnotationMirror
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class CachingClassRegistryTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `jar of a class is found without indexing classpath`() {
+    val jar = createJar()
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    val delegate = MirrorClassRegistry()
+
+    repeat(2) {
+      CachingClassRegistry(delegate, cache, listOf(jar), mapOf(jar to ARCHIVE_HASH)).use { registry ->
+        Assert.assertSame(mirror, registry.getClassMirror(TYPE))
+      }
+    }
+
+    Assert.assertEquals(1, delegate.loadCount)
+  }
+
+  @Test
+  fun `class in preceding directory is not cached`() {
+    val jar = createJar()
+    val directory = temporaryFolder.newFolder().toPath()
+    Files.createDirectories(directory.resolve(CLASS_FILE).parent)
+    Files.createFile(directory.resolve(CLASS_FILE))
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    val delegate = MirrorClassRegistry()
+
+    repeat(2) {
+      CachingClassRegistry(delegate, cache, listOf(directory, jar), mapOf(jar to ARCHIVE_HASH)).use { registry ->
+        registry.getClassMirror(TYPE)
+      }
+    }
+
+    Assert.assertEquals(2, delegate.loadCount)
+  }
+
+  private fun createJar(): Path {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    ZipOutputStream(Files.newOutputStream(jar)).use { stream ->
+      stream.putNextEntry(ZipEntry(CLASS_FILE))
+      stream.closeEntry()
+    }
+
+    return jar
+  }
+
+  private val mirror: ClassMirror by lazy {
+    GripFactory.INSTANCE.create(JvmRuntimeUtil.computeRuntimeClasspath()).use { grip ->
+      grip.classRegistry.getClassMirror(getObjectTypeByInternalName("java/lang/Object"))
+    }
+  }
+
+  private inner class MirrorClassRegistry : CloseableClassRegistry {
+    var loadCount = 0
+      private set
+
+    override fun getClassMirror(type: Type.Object): ClassMirror {
+      loadCount += 1
+      return mirror
+    }
+
+    override fun getAnnotationMirror(type: Type.Object): AnnotationMirror {
+      throw UnsupportedOperationException()
+    }
+
+    override fun findPathForType(type: Type.Object): Path {
+      throw UnsupportedOperationException()
+    }
+
+    override fun close() = Unit
+  }
+
+  private companion object {
+    private const val ARCHIVE_HASH = "hash"
+    private const val CLASS_FILE = "com/joom/colonist/First.class"
+    private val TYPE = getObjectTypeByInternalName("com/joom/colonist/First")
+  }
+}
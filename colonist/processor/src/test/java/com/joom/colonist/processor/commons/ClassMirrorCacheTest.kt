@@ -0,0 +1,148 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.commons
+
+import com.joom.colonist.processor.integration.JvmRuntimeUtil
+import com.joom.grip.GripFactory
+import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.io.Closeable
+import java.nio.file.Files
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ClassMirrorCacheTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `cached mirror is returned without loading`() {
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    var loadCount = 0
+
+    repeat(2) {
+      cache.openSession(TrackingRegistry()).use { session ->
+        session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { loadCount += 1; mirror }
+      }
+    }
+
+    Assert.assertEquals(1, loadCount)
+  }
+
+  @Test
+  fun `least recently used mirror is evicted`() {
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    var loadCount = 0
+
+    cache.openSession(TrackingRegistry()).use { session ->
+      session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { loadCount += 1; mirror }
+      session.getOrPut(ARCHIVE_HASH, SECOND_TYPE) { loadCount += 1; mirror }
+      session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { loadCount += 1; mirror }
+    }
+
+    Assert.assertEquals(3, loadCount)
+  }
+
+  @Test
+  fun `registry is kept open while its mirrors are cached`() {
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    val registry = TrackingRegistry()
+
+    cache.openSession(registry).use { session ->
+      session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { mirror }
+    }
+    val isClosedWhileCached = registry.isClosed
+    cache.openSession(TrackingRegistry()).use { session ->
+      session.getOrPut(ARCHIVE_HASH, SECOND_TYPE) { mirror }
+    }
+
+    Assert.assertFalse(isClosedWhileCached)
+    Assert.assertTrue(registry.isClosed)
+  }
+
+  @Test
+  fun `registry of a mirror is kept open until the session using it is closed`() {
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    val registry = TrackingRegistry()
+    cache.openSession(registry).use { session ->
+      session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { mirror }
+    }
+
+    val session = cache.openSession(TrackingRegistry())
+    session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { mirror }
+    session.getOrPut(ARCHIVE_HASH, SECOND_TYPE) { mirror }
+    val isClosedWhileUsed = registry.isClosed
+    session.close()
+
+    Assert.assertFalse(isClosedWhileUsed)
+    Assert.assertTrue(registry.isClosed)
+  }
+
+  @Test
+  fun `registries are closed with cache`() {
+    val cache = ClassMirrorCache(maxClassCount = 1)
+    val registry = TrackingRegistry()
+    cache.openSession(registry).use { session ->
+      session.getOrPut(ARCHIVE_HASH, FIRST_TYPE) { mirror }
+    }
+
+    cache.close()
+
+    Assert.assertTrue(registry.isClosed)
+  }
+
+  @Test
+  fun `archive classes exclude resources and versioned classes`() {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    ZipOutputStream(Files.newOutputStream(jar)).use { stream ->
+      listOf("com/joom/colonist/First.class", "META-INF/versions/9/com/joom/colonist/Second.class", "colonist.txt").forEach { name ->
+        stream.putNextEntry(ZipEntry(name))
+        stream.closeEntry()
+      }
+    }
+
+    val classes = ClassMirrorCache(maxClassCount = 1).getArchiveClasses(ARCHIVE_HASH, jar)
+
+    Assert.assertEquals(setOf("com/joom/colonist/First.class"), classes)
+  }
+
+  private val mirror: ClassMirror by lazy {
+    GripFactory.INSTANCE.create(JvmRuntimeUtil.computeRuntimeClasspath()).use { grip ->
+      grip.classRegistry.getClassMirror(getObjectTypeByInternalName("java/lang/Object"))
+    }
+  }
+
+  private class TrackingRegistry : Closeable {
+    var isClosed = false
+      private set
+
+    override fun close() {
+      isClosed = true
+    }
+  }
+
+  private companion object {
+    private const val ARCHIVE_HASH = "hash"
+    private val FIRST_TYPE = getObjectTypeByInternalName("com/joom/colonist/First")
+    private val SECOND_TYPE = getObjectTypeByInternalName("com/joom/colonist/Second")
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+import kotlin.io.path.outputStream
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.Opcodes
+
+class CachingClassIndexProviderTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `serialized class index is read back unchanged`() {
+    val file = temporaryFolder.newFile().toPath()
+
+    ClassIndexSerializer.write(CLASS_INDEX, file)
+
+    Assert.assertEquals(CLASS_INDEX.classes, ClassIndexSerializer.read(file)?.classes)
+  }
+
+  @Test
+  fun `class index of unchanged jar is loaded from cache`() {
+    val jar = createJar("first")
+    val delegate = CountingClassIndexProvider()
+    val provider = CachingClassIndexProvider(temporaryFolder.newFolder().toPath(), delegate)
+
+    val first = provider.getClassIndex(jar)
+    val second = provider.getClassIndex(jar)
+
+    Assert.assertEquals(1, delegate.count)
+    Assert.assertEquals(first.classes, second.classes)
+  }
+
+  @Test
+  fun `class index of changed jar is rebuilt`() {
+    val jar = createJar("first")
+    val delegate = CountingClassIndexProvider()
+    val provider = CachingClassIndexProvider(temporaryFolder.newFolder().toPath(), delegate)
+
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(1000))
+    provider.getClassIndex(jar)
+    createJar("second", jar)
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(2000))
+    provider.getClassIndex(jar)
+
+    Assert.assertEquals(2, delegate.count)
+  }
+
+  @Test
+  fun `class index of directory is not cached`() {
+    val directory = temporaryFolder.newFolder().toPath()
+    val delegate = CountingClassIndexProvider()
+    val provider = CachingClassIndexProvider(temporaryFolder.newFolder().toPath(), delegate)
+
+    provider.getClassIndex(directory)
+    provider.getClassIndex(directory)
+
+    Assert.assertEquals(2, delegate.count)
+  }
+
+  private fun createJar(entryName: String, path: Path = temporaryFolder.newFile("classes.jar").toPath()): Path {
+    JarOutputStream(path.outputStream()).use { output ->
+      output.putNextEntry(ZipEntry(entryName))
+      output.closeEntry()
+    }
+    return path
+  }
+
+  private class CountingClassIndexProvider : ClassIndexProvider {
+    var count = 0
+      private set
+
+    override fun getClassIndex(path: Path): ClassIndex {
+      count += 1
+      return CLASS_INDEX
+    }
+  }
+
+  private companion object {
+    private val CLASS_INDEX = ClassIndex(
+      listOf(
+        ClassHeader(
+          type = getObjectTypeByInternalName("com/joom/colonist/Settler"),
+          access = Opcodes.ACC_PUBLIC or Opcodes.ACC_FINAL,
+          superType = getObjectTypeByInternalName("java/lang/Object"),
+          interfaces = listOf(getObjectTypeByInternalName("java/lang/Runnable")),
+          annotations = listOf(getObjectTypeByInternalName("com/joom/colonist/SettlerAnnotation")),
+        ),
+        ClassHeader(
+          type = getObjectTypeByInternalName("java/lang/Object"),
+          access = Opcodes.ACC_PUBLIC,
+          superType = null,
+          interfaces = emptyList(),
+          annotations = emptyList(),
+        ),
+      )
+    )
+  }
+}
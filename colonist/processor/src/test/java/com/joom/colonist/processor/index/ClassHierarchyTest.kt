@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import org.junit.Assert
+import org.junit.Test
+import org.objectweb.asm.Opcodes
+
+class ClassHierarchyTest {
+
+  @Test
+  fun `finds subclasses of class`() {
+    val hierarchy = createHierarchy()
+
+    Assert.assertEquals(listOf("Base", "Derived", "Derived2"), hierarchy.findSubtypes(type("Base")).names())
+  }
+
+  @Test
+  fun `finds implementations of interface`() {
+    val hierarchy = createHierarchy()
+
+    Assert.assertEquals(
+      listOf("Derived", "Derived2", "Interface", "SubInterface", "Implementation"),
+      hierarchy.findSubtypes(type("Interface")).names()
+    )
+  }
+
+  @Test
+  fun `finds subtypes through classes outside of class table`() {
+    val hierarchy = createHierarchy()
+
+    Assert.assertEquals(listOf("External"), hierarchy.findSubtypes(type("ExternalInterface")).names())
+    Assert.assertEquals(listOf("External"), hierarchy.findSubtypes(type("ExternalBase")).names())
+  }
+
+  @Test
+  fun `returns nothing for unknown type`() {
+    val hierarchy = createHierarchy()
+
+    Assert.assertEquals(emptyList<String>(), hierarchy.findSubtypes(type("Unknown")).names())
+  }
+
+  private fun createHierarchy(): ClassHierarchy {
+    val classTable = ClassTable.build(
+      listOf(
+        ClassIndex(
+          listOf(
+            header("Base", superType = "java/lang/Object"),
+            header("Derived", superType = "Base", interfaces = listOf("Interface")),
+            header("Derived2", superType = "Derived"),
+            header("Interface", isInterface = true, superType = "java/lang/Object"),
+            header("SubInterface", isInterface = true, superType = "java/lang/Object", interfaces = listOf("Interface")),
+            header("Implementation", superType = "java/lang/Object", interfaces = listOf("SubInterface")),
+            header("External", superType = "ExternalBase"),
+          )
+        )
+      )
+    )
+
+    val externalHeaders = listOf(
+      header("java/lang/Object", superType = null),
+      header("ExternalBase", superType = "java/lang/Object", interfaces = listOf("ExternalInterface")),
+      header("ExternalInterface", isInterface = true, superType = "java/lang/Object"),
+    ).associateBy { it.type }
+
+    return ClassHierarchy.build(classTable) { externalHeaders[it] }
+  }
+
+  private fun header(name: String, superType: String?, interfaces: List<String> = emptyList(), isInterface: Boolean = false): ClassHeader {
+    return ClassHeader(
+      type = type(name),
+      access = Opcodes.ACC_PUBLIC or (if (isInterface) Opcodes.ACC_INTERFACE or Opcodes.ACC_ABSTRACT else 0),
+      superType = superType?.let { type(it) },
+      interfaces = interfaces.map { type(it) },
+      annotations = emptyList(),
+    )
+  }
+
+  private fun type(name: String): Type.Object {
+    return getObjectTypeByInternalName(name)
+  }
+
+  private fun List<ClassHeader>.names(): List<String> {
+    return map { it.type.internalName }
+  }
+}
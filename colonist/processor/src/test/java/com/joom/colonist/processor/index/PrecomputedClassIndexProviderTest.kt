@@ -0,0 +1,205 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.index
+
+import com.joom.colonist.processor.commons.computeContentHash
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+import kotlin.io.path.outputStream
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.Opcodes
+
+class PrecomputedClassIndexProviderTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `class index is read from jar`() {
+    val jar = createJarWithClassIndex(SETTLER_PATH, "META-INF/versions/11/$SETTLER_PATH")
+    val delegate = CountingClassIndexProvider()
+
+    val classIndex = PrecomputedClassIndexProvider(delegate).getClassIndex(jar)
+
+    Assert.assertEquals(0, delegate.count)
+    Assert.assertEquals(CLASS_INDEX.classes, classIndex.classes)
+  }
+
+  @Test
+  fun `jar with classes missing from class index is scanned`() {
+    val jar = createJarWithClassIndex(SETTLER_PATH, "com/joom/colonist/Shaded.class")
+    val delegate = CountingClassIndexProvider()
+
+    PrecomputedClassIndexProvider(delegate).getClassIndex(jar)
+
+    Assert.assertEquals(1, delegate.count)
+  }
+
+  @Test
+  fun `jar without indexed classes is scanned`() {
+    val jar = createJarWithClassIndex()
+    val delegate = CountingClassIndexProvider()
+
+    PrecomputedClassIndexProvider(delegate).getClassIndex(jar)
+
+    Assert.assertEquals(1, delegate.count)
+  }
+
+  @Test
+  fun `class index is read from directory`() {
+    val directory = createDirectoryWithClassIndex(SETTLER_PATH)
+    val delegate = CountingClassIndexProvider()
+
+    val classIndex = PrecomputedClassIndexProvider(delegate).getClassIndex(directory)
+
+    Assert.assertEquals(0, delegate.count)
+    Assert.assertEquals(CLASS_INDEX.classes, classIndex.classes)
+  }
+
+  @Test
+  fun `directory with classes missing from class index is scanned`() {
+    val directory = createDirectoryWithClassIndex(SETTLER_PATH, "com/joom/colonist/Recompiled.class")
+    val delegate = CountingClassIndexProvider()
+
+    PrecomputedClassIndexProvider(delegate).getClassIndex(directory)
+
+    Assert.assertEquals(1, delegate.count)
+  }
+
+  @Test
+  fun `class indices of merged libraries are combined`() {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    JarOutputStream(jar.outputStream()).use { output ->
+      listOf(CLASS_INDEX, OTHER_CLASS_INDEX).forEach { classIndex ->
+        val data = ClassIndexSerializer.toByteArray(classIndex)
+        output.putNextEntry(ZipEntry(PrecomputedClassIndexProvider.getClassIndexPath(data.computeContentHash())))
+        output.write(data)
+        output.closeEntry()
+      }
+      listOf(SETTLER_PATH, OTHER_SETTLER_PATH).forEach { classPath ->
+        output.putNextEntry(ZipEntry(classPath))
+        output.closeEntry()
+      }
+    }
+    val delegate = CountingClassIndexProvider()
+
+    val classIndex = PrecomputedClassIndexProvider(delegate).getClassIndex(jar)
+
+    Assert.assertEquals(0, delegate.count)
+    Assert.assertEquals((CLASS_INDEX.classes + OTHER_CLASS_INDEX.classes).sortedBy { it.type.internalName }, classIndex.classes)
+  }
+
+  @Test
+  fun `jar without class index is scanned`() {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    JarOutputStream(jar.outputStream()).use { output ->
+      output.putNextEntry(ZipEntry("file.txt"))
+      output.closeEntry()
+    }
+    val delegate = CountingClassIndexProvider()
+
+    PrecomputedClassIndexProvider(delegate).getClassIndex(jar)
+
+    Assert.assertEquals(1, delegate.count)
+  }
+
+  @Test
+  fun `corrupted class index is ignored`() {
+    val directory = createDirectoryWithClassIndex(SETTLER_PATH)
+    Files.write(directory.resolve(PrecomputedClassIndexProvider.getClassIndexPath(CLASS_INDEX_HASH)), byteArrayOf(1, 2, 3))
+    val delegate = CountingClassIndexProvider()
+
+    PrecomputedClassIndexProvider(delegate).getClassIndex(directory)
+
+    Assert.assertEquals(1, delegate.count)
+  }
+
+  private fun createJarWithClassIndex(vararg classPaths: String): Path {
+    val jar = temporaryFolder.newFile("classes.jar").toPath()
+    JarOutputStream(jar.outputStream()).use { output ->
+      output.putNextEntry(ZipEntry(PrecomputedClassIndexProvider.getClassIndexPath(CLASS_INDEX_HASH)))
+      output.write(ClassIndexSerializer.toByteArray(CLASS_INDEX))
+      output.closeEntry()
+      classPaths.forEach { classPath ->
+        output.putNextEntry(ZipEntry(classPath))
+        output.closeEntry()
+      }
+    }
+
+    return jar
+  }
+
+  private fun createDirectoryWithClassIndex(vararg classPaths: String): Path {
+    val directory = temporaryFolder.newFolder().toPath()
+    val indexFile = directory.resolve(PrecomputedClassIndexProvider.getClassIndexPath(CLASS_INDEX_HASH))
+    Files.createDirectories(indexFile.parent)
+    ClassIndexSerializer.write(CLASS_INDEX, indexFile)
+    classPaths.forEach { classPath ->
+      val classFile = directory.resolve(classPath)
+      Files.createDirectories(classFile.parent)
+      Files.write(classFile, byteArrayOf())
+    }
+
+    return directory
+  }
+
+  private class CountingClassIndexProvider : ClassIndexProvider {
+    var count = 0
+      private set
+
+    override fun getClassIndex(path: Path): ClassIndex {
+      count += 1
+      return ClassIndex(emptyList())
+    }
+  }
+
+  private companion object {
+    private const val SETTLER_PATH = "com/joom/colonist/Settler.class"
+    private const val OTHER_SETTLER_PATH = "com/joom/colonist/OtherSettler.class"
+    private const val CLASS_INDEX_HASH = "0123456789abcdef"
+
+    private val CLASS_INDEX = ClassIndex(
+      listOf(
+        ClassHeader(
+          type = getObjectTypeByInternalName("com/joom/colonist/Settler"),
+          access = Opcodes.ACC_PUBLIC or Opcodes.ACC_FINAL,
+          superType = getObjectTypeByInternalName("java/lang/Object"),
+          interfaces = emptyList(),
+          annotations = listOf(getObjectTypeByInternalName("com/joom/colonist/SettlerAnnotation")),
+        ),
+      )
+    )
+
+    private val OTHER_CLASS_INDEX = ClassIndex(
+      listOf(
+        ClassHeader(
+          type = getObjectTypeByInternalName("com/joom/colonist/OtherSettler"),
+          access = Opcodes.ACC_PUBLIC,
+          superType = getObjectTypeByInternalName("java/lang/Object"),
+          interfaces = emptyList(),
+          annotations = emptyList(),
+        ),
+      )
+    )
+  }
+}
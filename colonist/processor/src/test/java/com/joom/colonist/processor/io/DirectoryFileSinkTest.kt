@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import com.joom.grip.io.FileSource
+import java.nio.file.Files
+import java.nio.file.Path
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class DirectoryFileSinkTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `createFile creates parent directories`() {
+    val directory = temporaryFolder.newFolder().toPath()
+    DirectoryFileSink(directory).use { sink ->
+      sink.createFile("com/joom/Test.class", byteArrayOf(1, 2, 3))
+    }
+
+    Assert.assertArrayEquals(byteArrayOf(1, 2, 3), Files.readAllBytes(directory.resolve("com/joom/Test.class")))
+  }
+
+  @Test
+  fun `createFile does not modify hard links to replaced file`() {
+    val directory = temporaryFolder.newFolder().toPath()
+    val file = directory.resolve("Test.class")
+    val link = temporaryFolder.root.toPath().resolve("Backup.class")
+    Files.write(file, byteArrayOf(1))
+    Files.createLink(link, file)
+
+    DirectoryFileSink(directory).use { sink ->
+      sink.createFile("Test.class", byteArrayOf(2))
+    }
+
+    Assert.assertArrayEquals(byteArrayOf(2), Files.readAllBytes(file))
+    Assert.assertArrayEquals(byteArrayOf(1), Files.readAllBytes(link))
+  }
+
+  @Test
+  fun `copyLocalFile leaves files linked to the source untouched`() {
+    val directory = temporaryFolder.newFolder().toPath()
+    val backupDirectory = temporaryFolder.newFolder().toPath()
+    val file = directory.resolve("Test.class")
+    val backup = backupDirectory.resolve("Test.class")
+    Files.write(file, byteArrayOf(1))
+    Files.createLink(backup, file)
+
+    DirectoryFileSink(directory).use { sink ->
+      Assert.assertEquals(0, sink.copyLocalFile(createFileSource(backupDirectory), "Test.class"))
+    }
+
+    Assert.assertTrue(Files.isSameFile(file, backup))
+  }
+
+  @Test
+  fun `copyLocalFile copies files from other directories`() {
+    val directory = temporaryFolder.newFolder().toPath()
+    val sourceDirectory = temporaryFolder.newFolder().toPath()
+    Files.write(directory.resolve("Test.class"), byteArrayOf(1))
+    Files.write(sourceDirectory.resolve("Test.class"), byteArrayOf(2, 3))
+
+    DirectoryFileSink(directory).use { sink ->
+      Assert.assertEquals(2, sink.copyLocalFile(createFileSource(sourceDirectory), "Test.class"))
+    }
+
+    Assert.assertArrayEquals(byteArrayOf(2, 3), Files.readAllBytes(directory.resolve("Test.class")))
+    Assert.assertFalse(Files.isSameFile(directory.resolve("Test.class"), sourceDirectory.resolve("Test.class")))
+  }
+
+  private fun createFileSource(directory: Path): DirectoryFileSource {
+    return DirectoryFileSource(directory, EmptyFileSource)
+  }
+
+  private object EmptyFileSource : FileSource {
+    override fun listFiles(callback: (name: String, type: FileSource.EntryType) -> Unit) = Unit
+
+    override fun readFile(path: String): ByteArray = error("Files should be read directly")
+
+    override fun close() = Unit
+  }
+}
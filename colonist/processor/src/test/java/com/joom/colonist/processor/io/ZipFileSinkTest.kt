@@ -0,0 +1,178 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.io
+
+import com.joom.grip.io.FileSource
+import java.nio.file.Path
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+import kotlin.concurrent.thread
+import kotlin.io.path.outputStream
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ZipFileSinkTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `created files and directories are readable`() {
+    val jar = newJar()
+    ZipFileSink(jar).use { sink ->
+      sink.createDirectory("com")
+      sink.createDirectory("com/")
+      sink.createFile("com/Data.bin", DATA)
+      sink.createFile("empty.txt", ByteArray(0))
+    }
+
+    Assert.assertEquals(mapOf("com/" to ByteArray(0).toList(), "com/Data.bin" to DATA.toList(), "empty.txt" to emptyList<Byte>()), readZip(jar))
+  }
+
+  @Test
+  fun `raw copied files are equal to source files`() {
+    val source = newJar()
+    ZipOutputStream(source.outputStream()).use { output ->
+      output.putNextEntry(ZipEntry("com/"))
+      output.closeEntry()
+      output.putNextEntry(ZipEntry("com/Deflated.bin"))
+      output.write(DATA)
+      output.closeEntry()
+      output.putNextEntry(ZipEntry("com/Stored.bin").apply { storeData(DATA) })
+      output.write(DATA)
+      output.closeEntry()
+    }
+
+    val target = newJar()
+    ZipFileSource(source).use { fileSource ->
+      ZipFileSink(target).use { sink ->
+        fileSource.listFiles { name, type ->
+          when (type) {
+            FileSource.EntryType.DIRECTORY -> sink.createDirectory(name)
+            else -> sink.copyFile(fileSource, name)
+          }
+        }
+      }
+    }
+
+    Assert.assertEquals(readZip(source), readZip(target))
+  }
+
+  @Test
+  fun `archives with many entries are readable`() {
+    val jar = newJar()
+    ZipFileSink(jar).use { sink ->
+      repeat(ENTRY_COUNT) { sink.createFile("file$it", byteArrayOf(it.toByte())) }
+    }
+
+    Assert.assertEquals(ENTRY_COUNT, readZip(jar).size)
+    ZipFileSource(jar).use { fileSource ->
+      var count = 0
+      fileSource.listFiles { _, _ -> count += 1 }
+      Assert.assertEquals(ENTRY_COUNT, count)
+      Assert.assertArrayEquals(byteArrayOf(42), fileSource.readFile("file42"))
+    }
+  }
+
+  @Test
+  fun `files created concurrently are all written`() {
+    val jar = newJar()
+    ZipFileSink(jar).use { sink ->
+      (0 until CONCURRENT_ENTRY_COUNT).toList().parallelStream().forEach { sink.createFile("file$it", DATA) }
+      sink.flush()
+    }
+
+    val entries = readZip(jar)
+    Assert.assertEquals(CONCURRENT_ENTRY_COUNT, entries.size)
+    Assert.assertTrue(entries.values.all { it == DATA.toList() })
+  }
+
+  @Test
+  fun `segments are written in commit order`() {
+    val jar = newJar()
+    ZipFileSink(jar).use { sink ->
+      (0 until SEGMENT_COUNT).toList()
+        .parallelStream()
+        .map { index ->
+          sink.createSegment().also { segment ->
+            segment.createDirectory("segment$index")
+            segment.createFile("segment$index/file", DATA)
+          }
+        }
+        .forEachOrdered { it.commit() }
+    }
+
+    val expectedNames = (0 until SEGMENT_COUNT).flatMap { listOf("segment$it/", "segment$it/file") }
+    Assert.assertEquals(expectedNames, readZip(jar).keys.toList())
+  }
+
+  @Test(expected = ZipException::class)
+  fun `duplicate files are rejected`() {
+    ZipFileSink(newJar()).use { sink ->
+      sink.createFile("file", DATA)
+      sink.createFile("file", DATA)
+    }
+  }
+
+  @Test(timeout = 60_000)
+  fun `flushes racing close never hang`() {
+    repeat(RACE_COUNT) {
+      val sink = ZipFileSink(newJar())
+      val flusher = thread {
+        try {
+          sink.flush()
+        } catch (exception: IllegalStateException) {
+          // The sink was closed before the flush was enqueued.
+        }
+      }
+
+      sink.close()
+      flusher.join()
+    }
+  }
+
+  private fun newJar(): Path {
+    return temporaryFolder.newFolder().toPath().resolve("classes.jar")
+  }
+
+  private fun readZip(path: Path): Map<String, List<Byte>> {
+    return ZipFile(path.toFile()).use { zipFile ->
+      zipFile.entries().toList().associate { entry ->
+        entry.name to zipFile.getInputStream(entry).use { it.readBytes().toList() }
+      }
+    }
+  }
+
+  private fun ZipEntry.storeData(data: ByteArray) {
+    method = ZipEntry.STORED
+    size = data.size.toLong()
+    crc = CRC32().apply { update(data) }.value
+  }
+
+  private companion object {
+    private const val ENTRY_COUNT = 70000
+    private const val CONCURRENT_ENTRY_COUNT = 1000
+    private const val SEGMENT_COUNT = 100
+    private const val RACE_COUNT = 200
+    private val DATA = ByteArray(10000) { (it % 7).toByte() }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.processor.watermark
+
+import java.nio.ByteBuffer
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+
+class WatermarkCheckerTest {
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  @Test
+  fun `isColonistClass returns true for class with watermark`() {
+    Assert.assertTrue(WatermarkChecker.isColonistClass(ByteBuffer.wrap(createClass(hasWatermark = true))))
+  }
+
+  @Test
+  fun `isColonistClass returns false for class without watermark`() {
+    Assert.assertFalse(WatermarkChecker.isColonistClass(ByteBuffer.wrap(createClass(hasWatermark = false))))
+  }
+
+  @Test
+  fun `isColonistClass returns false for class with attribute name only in constant pool`() {
+    Assert.assertFalse(WatermarkChecker.isColonistClass(ByteBuffer.wrap(createClass(hasWatermark = false, constant = "Colonist"))))
+  }
+
+  @Test
+  fun `isColonistClass returns false for malformed class`() {
+    Assert.assertFalse(WatermarkChecker.isColonistClass(ByteBuffer.wrap(byteArrayOf(0xCA.toByte(), 0xFE.toByte(), 0xBA.toByte()))))
+    Assert.assertFalse(WatermarkChecker.isColonistClass(ByteBuffer.wrap(createClass(hasWatermark = true).copyOf(64))))
+  }
+
+  @Test
+  fun `isColonistClass reads small and large class files`() {
+    val smallFile = temporaryFolder.newFile("Small.class").apply { writeBytes(createClass(hasWatermark = true)) }
+    val largeFile = temporaryFolder.newFile("Large.class").apply { writeBytes(createClass(hasWatermark = true, constant = "x".repeat(65000))) }
+    val otherFile = temporaryFolder.newFile("Other.class").apply { writeBytes(createClass(hasWatermark = false, constant = "x".repeat(65000))) }
+
+    Assert.assertTrue(largeFile.length() > 64 * 1024)
+    Assert.assertTrue(WatermarkChecker.isColonistClass(smallFile))
+    Assert.assertTrue(WatermarkChecker.isColonistClass(largeFile))
+    Assert.assertFalse(WatermarkChecker.isColonistClass(otherFile))
+  }
+
+  private fun createClass(hasWatermark: Boolean, constant: String? = null): ByteArray {
+    val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
+    writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, "com/joom/Test", null, "java/lang/Object", arrayOf("java/io/Serializable"))
+    writer.visitSource("Test.kt", null)
+    writer.visitField(Opcodes.ACC_STATIC or Opcodes.ACC_FINAL, "LONG", "J", null, 42L).visitEnd()
+    writer.visitField(Opcodes.ACC_STATIC or Opcodes.ACC_FINAL, "DOUBLE", "D", null, 4.2).visitEnd()
+    if (constant != null) {
+      writer.visitField(Opcodes.ACC_STATIC or Opcodes.ACC_FINAL, "STRING", "Ljava/lang/String;", null, constant).visitEnd()
+      writer.visitField(Opcodes.ACC_STATIC or Opcodes.ACC_FINAL, "OTHER_STRING", "Ljava/lang/String;", null, "$constant!").visitEnd()
+    }
+
+    writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null).apply {
+      visitCode()
+      visitVarInsn(Opcodes.ALOAD, 0)
+      visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false)
+      visitInsn(Opcodes.RETURN)
+      visitMaxs(0, 0)
+      visitEnd()
+    }
+
+    if (hasWatermark) {
+      writer.visitAttribute(ColonistAttribute())
+    }
+
+    writer.visitEnd()
+    return writer.toByteArray()
+  }
+}
@@ -0,0 +1,30 @@
+package com.joom.colonist.processor.incremental
+
+import com.joom.colonist.AcceptSettlersViaCallback
+import com.joom.colonist.Colony
+import com.joom.colonist.OnAcceptSettler
+import com.joom.colonist.ProduceSettlersViaConstructor
+import com.joom.colonist.SelectSettlersBySuperType
+
+abstract class BasePlugin : Plugin
+
+class FirstPlugin : BasePlugin()
+
+class UnrelatedClass
+
+interface Plugin
+
+@Colony
+@SelectSettlersBySuperType(Plugin::class)
+@ProduceSettlersViaConstructor
+@AcceptSettlersViaCallback
+annotation class PluginColony
+
+@PluginColony
+class PluginRegistry {
+
+  @OnAcceptSettler(colonyAnnotation = PluginColony::class)
+  fun onAcceptSettler(plugin: Plugin) {
+
+  }
+}
@@ -0,0 +1,48 @@
+package com.joom.colonist.processor.reproducible.many_settlers
+
+import com.joom.colonist.AcceptSettlersViaCallback
+import com.joom.colonist.Colony
+import com.joom.colonist.OnAcceptSettler
+import com.joom.colonist.ProduceSettlersAsClasses
+import com.joom.colonist.SelectSettlersByAnnotation
+
+@TestSettler
+class FirstSettler
+
+@TestSettler
+class SecondSettler
+
+@TestSettler
+class ThirdSettler
+
+@TestSettler
+class FourthSettler
+
+@TestSettler
+class FifthSettler
+
+annotation class TestSettler
+
+@Colony
+@SelectSettlersByAnnotation(TestSettler::class)
+@ProduceSettlersAsClasses
+@AcceptSettlersViaCallback
+annotation class TestColony
+
+@TestColony
+class FirstColonyImpl {
+
+  @OnAcceptSettler(colonyAnnotation = TestColony::class)
+  fun onAcceptSettler(clazz: Class<*>) {
+
+  }
+}
+
+@TestColony
+class SecondColonyImpl {
+
+  @OnAcceptSettler(colonyAnnotation = TestColony::class)
+  fun onAcceptSettler(clazz: Class<*>) {
+
+  }
+}
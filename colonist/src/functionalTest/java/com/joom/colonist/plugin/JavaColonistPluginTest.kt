@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 SIA Joom
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joom.colonist.plugin
+
+import java.io.File
+import java.net.URI
+import java.util.zip.ZipFile
+import org.gradle.testkit.runner.GradleRunner
+import org.gradle.testkit.runner.TaskOutcome
+import org.intellij.lang.annotations.Language
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+internal class JavaColonistPluginTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private companion object {
+    private const val PACKAGE_PATH = "com/joom/colonist/test"
+    private const val PLUGIN_REGISTRY_PATH = "$PACKAGE_PATH/PluginRegistry.class"
+    private const val COLONY_FOUNDER_NAME = "com/joom/colonist/internal/ColonyFounder"
+
+    @Language("gradle")
+    private const val SETTINGS_GRADLE = """
+include ":library", ":app"
+"""
+
+    @Language("gradle")
+    private const val ROOT_BUILD_GRADLE = """
+buildscript {
+  repositories {
+    mavenLocal()
+    mavenCentral()
+  }
+
+  dependencies {
+    classpath "com.joom.colonist:colonist-gradle-plugin:+"
+  }
+}
+
+subprojects {
+  repositories {
+    mavenLocal()
+    mavenCentral()
+  }
+}
+"""
+
+    @Language("gradle")
+    private const val LIBRARY_BUILD_GRADLE = """
+apply plugin: "java-library"
+apply plugin: "com.joom.colonist"
+
+colonist {
+  discoverSettlers = true
+  transformOutOfPlace = true
+}
+
+dependencies {
+  testImplementation "junit:junit:4.13.2"
+}
+"""
+
+    // Compiles against the classes variant of the library and checks that it carries the patched classes.
+    @Language("gradle")
+    private const val APP_BUILD_GRADLE = """
+apply plugin: "java"
+
+dependencies {
+  implementation project(":library")
+  testImplementation "junit:junit:4.13.2"
+}
+
+tasks.register("checkLibraryClasses") {
+  def classpath = configurations.compileClasspath
+  inputs.files(classpath)
+  doLast {
+    def registry = classpath.files.collect { new File(it, "com/joom/colonist/test/PluginRegistry.class") }.find { it.isFile() }
+    if (registry == null || !new String(registry.bytes, "ISO-8859-1").contains("com/joom/colonist/internal/ColonyFounder")) {
+      throw new GradleException("Library classes on the compile classpath aren't patched")
+    }
+  }
+}
+"""
+
+    @Language("java")
+    private const val PLUGIN = """
+package com.joom.colonist.test;
+
+public interface Plugin {
+}
+"""
+
+    @Language("java")
+    private const val FIRST_PLUGIN = """
+package com.joom.colonist.test;
+
+public class FirstPlugin implements Plugin {
+}
+"""
+
+    @Language("java")
+    private const val PLUGIN_COLONY = """
+package com.joom.colonist.test;
+
+import com.joom.colonist.AcceptSettlersViaCallback;
+import com.joom.colonist.Colony;
+import com.joom.colonist.ProduceSettlersViaConstructor;
+import com.joom.colonist.SelectSettlersBySuperType;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Colony
+@SelectSettlersBySuperType(Plugin.class)
+@ProduceSettlersViaConstructor
+@AcceptSettlersViaCallback
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+@interface PluginColony {
+}
+"""
+
+    @Language("java")
+    private const val PLUGIN_REGISTRY = """
+package com.joom.colonist.test;
+
+import com.joom.colonist.Colonist;
+import com.joom.colonist.OnAcceptSettler;
+import java.util.ArrayList;
+import java.util.List;
+
+@PluginColony
+public class PluginRegistry {
+  private final List<Plugin> plugins = new ArrayList<>();
+
+  public PluginRegistry() {
+    Colonist.settle(this);
+  }
+
+  public List<Plugin> getPlugins() {
+    return plugins;
+  }
+
+  @OnAcceptSettler(colonyAnnotation = PluginColony.class)
+  void onAcceptSettler(Plugin plugin) {
+    plugins.add(plugin);
+  }
+}
+"""
+
+    @Language("java")
+    private const val LIBRARY_TEST = """
+package com.joom.colonist.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LibraryTest {
+  @Test
+  public void settlersAreAccepted() {
+    Assert.assertEquals(1, new PluginRegistry().getPlugins().size());
+  }
+}
+"""
+
+    @Language("java")
+    private const val APP_TEST = """
+package com.joom.colonist.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AppTest {
+  @Test
+  public void librarySettlersAreAccepted() {
+    Assert.assertEquals(1, new PluginRegistry().getPlugins().size());
+  }
+}
+"""
+  }
+
+  @Test
+  fun `out-of-place transform is visible to the jar, tests and dependent projects`() {
+    val projectRoot = createProjectDirectory()
+
+    val result = createGradleRunner(projectRoot, GradleDistribution.GRADLE_7_5).build()
+
+    listOf(":library:colonistTransformClasses", ":library:jar", ":library:test", ":app:checkLibraryClasses", ":app:test").forEach { path ->
+      Assert.assertEquals(path, TaskOutcome.SUCCESS, result.task(path)?.outcome)
+    }
+
+    ZipFile(File(projectRoot, "library/build/libs/library.jar")).use { jar ->
+      val entry = jar.getEntry(PLUGIN_REGISTRY_PATH) ?: error("Jar doesn't contain $PLUGIN_REGISTRY_PATH")
+      val data = jar.getInputStream(entry).use { it.readBytes() }
+      Assert.assertTrue(String(data, Charsets.ISO_8859_1).contains(COLONY_FOUNDER_NAME))
+    }
+  }
+
+  private fun createProjectDirectory(): File {
+    val projectRoot = temporaryFolder.newFolder()
+    writeText(SETTINGS_GRADLE, File(projectRoot, "settings.gradle"))
+    writeText(ROOT_BUILD_GRADLE, File(projectRoot, "build.gradle"))
+    writeText(LIBRARY_BUILD_GRADLE, File(projectRoot, "library/build.gradle"))
+    writeText(PLUGIN, File(projectRoot, "library/src/main/java/$PACKAGE_PATH/Plugin.java"))
+    writeText(FIRST_PLUGIN, File(projectRoot, "library/src/main/java/$PACKAGE_PATH/FirstPlugin.java"))
+    writeText(PLUGIN_COLONY, File(projectRoot, "library/src/main/java/$PACKAGE_PATH/PluginColony.java"))
+    writeText(PLUGIN_REGISTRY, File(projectRoot, "library/src/main/java/$PACKAGE_PATH/PluginRegistry.java"))
+    writeText(LIBRARY_TEST, File(projectRoot, "library/src/test/java/$PACKAGE_PATH/LibraryTest.java"))
+    writeText(APP_BUILD_GRADLE, File(projectRoot, "app/build.gradle"))
+    writeText(APP_TEST, File(projectRoot, "app/src/test/java/$PACKAGE_PATH/AppTest.java"))
+    return projectRoot
+  }
+
+  private fun createGradleRunner(projectDir: File, gradle: GradleDistribution): GradleRunner {
+    return GradleRunner.create()
+      .withGradleDistribution(URI.create(gradle.url))
+      .forwardOutput()
+      .withProjectDir(projectDir)
+      .withArguments(":library:jar", ":library:test", ":app:checkLibraryClasses", ":app:test", "--stacktrace")
+  }
+
+  private fun writeText(content: String, destination: File) {
+    if (!destination.parentFile.exists() && !destination.parentFile.mkdirs()) {
+      error("Failed to create parent directory ${destination.parentFile}")
+    }
+
+    destination.writeText(content)
+  }
+}